@@ -13,6 +13,8 @@ public class AggInfo {
     public void restore(JsonNode recipient) {
         recipient.aggregate = this.aggregate;
         recipient.aggregateComment = this.aggregateComment;
+        recipient.invalidateLines();
+        recipient.treeChanged();
     }
 
 }
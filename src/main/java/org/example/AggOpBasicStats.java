@@ -9,13 +9,15 @@ import org.jetbrains.annotations.Nullable;
  *
  */
 public class AggOpBasicStats {
-    Double minNum;
-    Double maxNum;
+    // Primitives so visiting doesn't allocate. minNum and maxNum only
+    // mean something once numCount>0, same for the lengths and lenCount.
+    double minNum;
+    double maxNum;
     String minStr;
     String maxStr;
-    Integer minLength;
-    Integer maxLength;
-    Double total = (double) 0;
+    int minLength;
+    int maxLength;
+    double total = 0;
     long totalLength = 0;
     int numCount = 0;
     int strCount = 0;
@@ -215,29 +217,31 @@ public class AggOpBasicStats {
     }
 
     public void init() {
-        minNum = null;
-        maxNum = null;
+        minNum = 0;
+        maxNum = 0;
         minStr = null;
         maxStr = null;
-        minLength = null;
-        maxLength = null;
+        minLength = 0;
+        maxLength = 0;
         totalLength = 0;
         numCount = 0;
         strCount = 0;
         lenCount = 0;
         otherCount = 0;
-        total = (double) 0;
+        total = 0;
     }
 
     public void visit(JsonNode node) {
         if (node instanceof JsonNodeValue) {
             JsonNodeValue val = (JsonNodeValue) node;
+            if (val.isNumber()) {
+                visitNumber(val.doubleValue());
+                return;
+            }
+            // Strings that hold a number count as numbers too.
             Double number = val.asDouble();
             if (number!=null) {
-                total += number;
-                numCount++;
-                if (null == minNum || number < minNum) minNum = number;
-                if (null == maxNum || number > maxNum) maxNum = number;
+                visitNumber(number);
                 return;
             } else {
                 strCount++;
@@ -257,23 +261,30 @@ public class AggOpBasicStats {
             int len = list.childCount();
             totalLength += len;
             lenCount++;
-            if (minLength==null || len<minLength) minLength = len;
-            if (maxLength==null || len>maxLength) maxLength = len;
+            if (lenCount==1 || len<minLength) minLength = len;
+            if (lenCount==1 || len>maxLength) maxLength = len;
             return;
         }
         otherCount++;
     }
 
+    private void visitNumber(double number) {
+        total += number;
+        numCount++;
+        if (numCount==1 || number < minNum) minNum = number;
+        if (numCount==1 || number > maxNum) maxNum = number;
+    }
+
     /** Return the "min" value.
      * @return null if we didn't visit anything of that type. **/
     public @Nullable Object getMin(@NotNull Unit unit) {
         switch (unit) {
             case NUMBER:
-                return minNum;
+                return (numCount==0 ? null : minNum);
             case STRING:
                 return minStr;
             case LENGTH:
-                return minLength;
+                return (lenCount==0 ? null : minLength);
             case NOTHING:
                 return null;
             default:
@@ -286,11 +297,11 @@ public class AggOpBasicStats {
     public @Nullable Object getMax(@NotNull Unit unit) {
         switch (unit) {
             case NUMBER:
-                return maxNum;
+                return (numCount==0 ? null : maxNum);
             case STRING:
                 return maxStr;
             case LENGTH:
-                return maxLength;
+                return (lenCount==0 ? null : maxLength);
             case NOTHING:
                 return null;
             default:
@@ -299,9 +310,9 @@ public class AggOpBasicStats {
     }
 
     public Unit getUnit() {
-        if (maxNum!=null) return Unit.NUMBER;
+        if (numCount>0) return Unit.NUMBER;
         if (maxStr!=null) return Unit.STRING;
-        if (maxLength!=null) return Unit.LENGTH;
+        if (lenCount>0) return Unit.LENGTH;
         return Unit.NOTHING;
     }
 
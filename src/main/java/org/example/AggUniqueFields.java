@@ -25,31 +25,69 @@ public class AggUniqueFields {
         counts = new HashMap<>();
         grandKids = new HashMap<>();
 
+        if (aggNode.values instanceof ColumnarList) {
+            countColumns(aggNode, (ColumnarList) aggNode.values);
+            return;
+        }
         for (int i=0; i<aggNode.childCount(); i++) {
             JsonNode kid = aggNode.get(i);
             if (!(kid instanceof JsonNodeMap)) continue;
-            total += 1;
-            JsonNodeMap map = (JsonNodeMap) kid;
-            for (String k : map.getKeysInOrder()) {
-                if (!counts.containsKey(k)) {
-                    counts.put(k, Long.valueOf(0));
-                }
-                Long oldCount = counts.get(k);
-                oldCount += 1;
-                counts.put(k, oldCount);
+            countMap((JsonNodeMap) kid);
+        }
+
+        // at this point, total and counts are updated.
+    }
+
+    private void countMap(JsonNodeMap map) {
+        total += 1;
+        for (String k : map.getKeysInOrder()) {
+            if (!counts.containsKey(k)) {
+                counts.put(k, Long.valueOf(0));
+            }
+            Long oldCount = counts.get(k);
+            oldCount += 1;
+            counts.put(k, oldCount);
+
+            JsonNode grandKid = map.getChild(k);
+            if (grandKid instanceof JsonNodeList) {
+                // maybe it holds structs and we should aggregate them?
+                AggUniqueFields itsCounts = new AggUniqueFields((JsonNodeList)grandKid);
+                // first time around we get null, adding null does nothing.
+                itsCounts = itsCounts.add(grandKids.get(k));
+                grandKids.put(k, itsCounts);
+            }
+        }
+    }
 
-                JsonNode grandKid = map.getChild(k);
+    // The rows without a node all have the same keys, so we can count them without
+    // looking at them. Only the columns that may hold lists need a closer look.
+    // Rows that have a node may have been changed, so we look at the node instead.
+    private void countColumns(JsonNodeList aggNode, ColumnarList columns) {
+        KeyShape shape = columns.getShape();
+        long fromColumns = 0;
+        for (int i=0; i<columns.size(); i++) {
+            Object peeked = aggNode.peek(i);
+            if (peeked instanceof JsonNode) {
+                if (peeked instanceof JsonNodeMap) countMap((JsonNodeMap) peeked);
+                continue;
+            }
+            fromColumns += 1;
+            for (int c=0; c<shape.size(); c++) {
+                if (columns.isScalarColumn(c)) continue;
+                String k = shape.key(c);
+                JsonNode grandKid = ((JsonNodeMap) aggNode.get(i)).getChild(k);
                 if (grandKid instanceof JsonNodeList) {
-                    // maybe it holds structs and we should aggregate them?
                     AggUniqueFields itsCounts = new AggUniqueFields((JsonNodeList)grandKid);
-                    // first time around we get null, adding null does nothing.
                     itsCounts = itsCounts.add(grandKids.get(k));
                     grandKids.put(k, itsCounts);
                 }
             }
         }
-
-        // at this point, total and counts are updated.
+        total += (int) fromColumns;
+        if (fromColumns == 0) return;
+        for (int c=0; c<shape.size(); c++) {
+            counts.merge(shape.key(c), fromColumns, Long::sum);
+        }
     }
 
     private AggUniqueFields(int total, Map<String, Long> counts, Map<String, AggUniqueFields> grandKids) {
@@ -0,0 +1,179 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a big JSONL file, or a file with a top-level array, on a background thread.
+ * The values are handed over in batches so the UI can show the first ones
+ * while the rest of the file is still being parsed. JSONL lines are parsed in
+ * parallel (see ChunkedParser).
+ *
+ * Only the loader parses (with help from the fork-join pool), and only the UI thread
+ * touches the JsonNode tree: it calls takeLoaded() and appends what it got.
+ */
+public class BackgroundLoader implements Runnable {
+
+    // How many values we hand over at a time.
+    static final int BATCH_SIZE = 1000;
+    // If the UI doesn't keep up, the loader waits instead of filling up the memory.
+    private static final int MAX_BATCHES_QUEUED = 16;
+
+    private final Path path;
+    // true: the values are the elements of a top-level array. false: JSONL.
+    private final boolean isArray;
+    private final long totalBytes;
+    private final BlockingQueue<List<Object>> batches = new ArrayBlockingQueue<>(MAX_BATCHES_QUEUED);
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile boolean done = false;
+    private volatile @Nullable Exception error = null;
+    // only used by the loader thread: the values we didn't hand over yet.
+    private List<Object> batch = new ArrayList<>();
+    // only used by the UI thread.
+    private int recordsTaken = 0;
+
+    /**
+     * Start loading the file in the background.
+     * @return null if the file is neither JSONL nor a top-level array;
+     *         then it should be parsed the normal way.
+     */
+    public static @Nullable BackgroundLoader start(Path path) throws IOException {
+        long size = Files.size(path);
+        FileInput.Format format = FileInput.sniff(path);
+        if (format == FileInput.Format.OTHER) return null;
+        boolean isArray = (format == FileInput.Format.ARRAY);
+        BackgroundLoader ret = new BackgroundLoader(path, isArray, size);
+        Thread thread = new Thread(ret, "loader");
+        // don't keep the program alive if the user quits before we're done.
+        thread.setDaemon(true);
+        thread.start();
+        return ret;
+    }
+
+    private BackgroundLoader(Path path, boolean isArray, long totalBytes) {
+        this.path = path;
+        this.isArray = isArray;
+        this.totalBytes = totalBytes;
+    }
+
+    @Override
+    public void run() {
+        try (InputStream in = new CountingInputStream(FileInput.open(path))) {
+            if (isArray) {
+                readArray(in);
+            } else {
+                // JSONL: parse the lines in parallel, the values still come in order.
+                ChunkedParser.readAll(in, JsonNode.READER, this::add);
+            }
+            handOver(true);
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            done = true;
+        }
+    }
+
+    private void readArray(InputStream in) throws IOException, InterruptedException {
+        try (JsonParser parser = JsonNode.READER.createParser(in)) {
+            parser.nextToken();
+            while (true) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.END_ARRAY) break;
+                if (null == token) throw new IOException("Unexpected end of file, the array isn't closed");
+                add(JsonNode.READER.readValue(parser));
+            }
+            if (null != parser.nextToken()) {
+                throw new IOException("Unexpected content after the top-level array");
+            }
+        }
+    }
+
+    private void add(Object value) throws InterruptedException {
+        batch.add(value);
+        handOver(false);
+    }
+
+    // Put the batch in the queue if it's big enough, and start the next one.
+    private void handOver(boolean last) throws InterruptedException {
+        if (batch.isEmpty() || (!last && batch.size() < BATCH_SIZE)) return;
+        batches.put(batch);
+        batch = new ArrayList<>();
+    }
+
+    /**
+     * Returns all the values loaded since the last call (maybe none).
+     * This doesn't wait.
+     */
+    public List<Object> takeLoaded() {
+        List<List<Object>> got = new ArrayList<>();
+        batches.drainTo(got);
+        List<Object> ret = new ArrayList<>();
+        for (List<Object> batch : got) {
+            ret.addAll(batch);
+        }
+        recordsTaken += ret.size();
+        return ret;
+    }
+
+    /** True once the whole file is read and takeLoaded() has returned all of it. */
+    public boolean isFinished() {
+        // check "done" first: the loader sets it after queueing its last batch.
+        return done && batches.isEmpty();
+    }
+
+    /** If loading stopped early, this says why. */
+    public @Nullable Exception getError() {
+        return error;
+    }
+
+    /** True if the file was JSONL, false if it was a top-level array. */
+    public boolean isJsonl() {
+        return !isArray;
+    }
+
+    /** How many values takeLoaded() has returned so far. */
+    public int getRecordCount() {
+        return recordsTaken;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // Keeps track of how far along in the file we are.
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ret = super.read();
+            if (ret >= 0) bytesRead.incrementAndGet();
+            return ret;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int ret = super.read(b, off, len);
+            if (ret > 0) bytesRead.addAndGet(ret);
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads all the top-level values of a stream, same as one pass of readValues would.
+ * If it looks like JSONL, we cut the text into chunks of whole lines as we read it
+ * and parse the chunks on the fork-join pool, while we read the next ones.
+ *
+ * A chunk only parses if it starts and ends between top-level values. If one doesn't
+ * (a value that spans lines), everything before it was cut in the right places, so we
+ * parse from that chunk on in one pass. Same if there's a block comment, since a whole
+ * chunk could be inside of one.
+ */
+class ChunkedParser {
+
+    // How many bytes we read before looking for a place to cut.
+    static final int CHUNK_BYTES = 1 << 20;
+
+    private final InputStream in;
+    private final ObjectReader reader;
+    // What we read but didn't cut into a chunk yet.
+    private byte[] buf = new byte[CHUNK_BYTES];
+    private int buffered = 0;
+    private boolean eof = false;
+
+    /** Where the values go, in order, as they're parsed. */
+    interface Sink {
+        void accept(Object value) throws InterruptedException;
+    }
+
+    private ChunkedParser(InputStream in, ObjectReader reader) {
+        this.in = in;
+        this.reader = reader;
+    }
+
+    /** All the top-level values in the stream, in order. */
+    static @NotNull List<Object> readAll(@NotNull InputStream in, @NotNull ObjectReader reader) throws IOException {
+        return readAll(in, reader, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    // Accessible for tests: with parallelism 1, it's all one pass.
+    static @NotNull List<Object> readAll(@NotNull InputStream in, @NotNull ObjectReader reader, int parallelism) throws IOException {
+        List<Object> all = new ArrayList<>();
+        try {
+            new ChunkedParser(in, reader).readAll(all::add, parallelism);
+        } catch (InterruptedException e) {
+            // adding to a list doesn't wait.
+            throw new IllegalStateException(e);
+        }
+        return all;
+    }
+
+    /**
+     * Same, but the values go to the sink as we get them, so the first ones can be used
+     * before the rest is parsed.
+     */
+    static void readAll(@NotNull InputStream in, @NotNull ObjectReader reader, @NotNull Sink sink) throws IOException, InterruptedException {
+        new ChunkedParser(in, reader).readAll(sink, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    private void readAll(Sink all, int parallelism) throws IOException, InterruptedException {
+        byte[] first = nextChunk();
+        if (null == first) return;
+        // if we already read all of it, splitting isn't worth it.
+        if (eof || parallelism < 2 || !looksLikeJsonl(first)) {
+            readRest(all, List.of(first));
+            return;
+        }
+        // Chunks we read, and their values. We look at them in order.
+        ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+        ArrayDeque<CompletableFuture<List<Object>>> parsing = new ArrayDeque<>();
+        byte[] chunk = first;
+        boolean failed = false;
+        while (null != chunk && !failed) {
+            if (hasBlockComment(chunk)) {
+                chunks.add(chunk);
+                break;
+            }
+            final byte[] text = chunk;
+            chunks.add(text);
+            parsing.add(CompletableFuture.supplyAsync(() -> parseChunk(text)));
+            // don't read too far ahead of the parsing.
+            while (!failed && parsing.size() > 2 * parallelism) {
+                failed = !takeFirst(all, chunks, parsing);
+            }
+            if (!failed) chunk = nextChunk();
+        }
+        while (!failed && !parsing.isEmpty()) {
+            failed = !takeFirst(all, chunks, parsing);
+        }
+        // whatever we didn't parse in chunks (if anything), in one pass.
+        for (CompletableFuture<List<Object>> f : parsing) f.cancel(false);
+        if (!chunks.isEmpty() || buffered > 0 || !eof) readRest(all, new ArrayList<>(chunks));
+    }
+
+    // Wait for the first chunk's values and add them. False if it didn't parse.
+    private boolean takeFirst(Sink all, ArrayDeque<byte[]> chunks, ArrayDeque<CompletableFuture<List<Object>>> parsing) throws InterruptedException {
+        List<Object> values;
+        try {
+            values = parsing.getFirst().join();
+        } catch (CompletionException cx) {
+            return false;
+        }
+        for (Object value : values) all.accept(value);
+        parsing.removeFirst();
+        chunks.removeFirst();
+        return true;
+    }
+
+    private List<Object> parseChunk(byte[] text) {
+        List<Object> ret = new ArrayList<>();
+        try (JsonParser parser = reader.createParser(text)) {
+            MappingIterator<Object> it = reader.readValues(parser);
+            while (it.hasNextValue()) {
+                ret.add(it.nextValue());
+            }
+        } catch (IOException iox) {
+            throw new UncheckedIOException(iox);
+        }
+        return ret;
+    }
+
+    // Parse those chunks, then the rest of the stream, in one pass.
+    private void readRest(Sink all, List<byte[]> chunks) throws IOException, InterruptedException {
+        List<InputStream> parts = new ArrayList<>();
+        for (byte[] chunk : chunks) parts.add(new ByteArrayInputStream(chunk));
+        parts.add(new ByteArrayInputStream(buf, 0, buffered));
+        if (!eof) parts.add(in);
+        try (JsonParser parser = reader.createParser(new SequenceInputStream(Collections.enumeration(parts)))) {
+            MappingIterator<Object> it = reader.readValues(parser);
+            while (it.hasNextValue()) {
+                all.accept(it.nextValue());
+            }
+        }
+    }
+
+    // The next whole lines, about CHUNK_BYTES of them. At the end of the stream, whatever's left.
+    // Null if there's nothing left.
+    private byte @Nullable [] nextChunk() throws IOException {
+        int searched = 0;
+        while (true) {
+            while (!eof && buffered < buf.length) {
+                int n = in.read(buf, buffered, buf.length - buffered);
+                if (n < 0) eof = true;
+                else buffered += n;
+            }
+            if (buffered == 0) return null;
+            int cut = buffered - 1;
+            while (cut >= searched && buf[cut] != '\n') cut--;
+            if (cut < searched) {
+                if (!eof) {
+                    // a long line, read more of it.
+                    searched = buffered;
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    continue;
+                }
+                cut = buffered - 1;
+            }
+            byte[] ret = Arrays.copyOf(buf, cut + 1);
+            buffered -= cut + 1;
+            System.arraycopy(buf, cut + 1, buf, 0, buffered);
+            return ret;
+        }
+    }
+
+    // Look at the first few lines, like JsonNode.looksLikeJsonl.
+    private static boolean looksLikeJsonl(byte[] chunk) {
+        int end = Math.min(chunk.length, JsonNode.SNIFF_CHARS);
+        while (end < chunk.length && chunk[end - 1] != '\n') end++;
+        String start = new String(chunk, 0, end, StandardCharsets.UTF_8);
+        return JsonNode.looksLikeJsonl(start.split("\n"));
+    }
+
+    // True if there's a "/*" in there (maybe in a string, we don't mind).
+    private static boolean hasBlockComment(byte[] chunk) {
+        for (int i = 0; i + 1 < chunk.length; i++) {
+            if (chunk[i] == '/' && chunk[i + 1] == '*') return true;
+        }
+        return false;
+    }
+}
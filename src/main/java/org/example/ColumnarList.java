@@ -0,0 +1,247 @@
+package org.example;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A list of maps that all have the same keys, stored one column per key.
+ *
+ * Numbers, booleans and strings go into primitive arrays (strings are dictionary-encoded),
+ * with a bitmap for the nulls. Anything else (nested maps and lists, or a mix of types)
+ * goes into a plain Object column. get(i) builds the map for row i when asked.
+ *
+ * Code that only needs one field can use getField(row, column) to skip building the map.
+ * The list can't be modified.
+ */
+public class ColumnarList extends AbstractList<Object> {
+
+    // Below this many rows it's not worth the trouble.
+    public static final int MIN_ROWS = 1000;
+
+    private final @NotNull KeyShape shape;
+    private final int size;
+    private final Column[] columns;
+
+    /**
+     * Store the list in columns, if all its elements are maps with the same keys.
+     * @return null if that's not the case, or if the list is too short to bother.
+     */
+    public static @Nullable ColumnarList tryCreate(List<Object> list) {
+        if (list.size() < MIN_ROWS) return null;
+        if (!(list.get(0) instanceof ShapedMap)) return null;
+        KeyShape shape = ((ShapedMap) list.get(0)).getShape();
+        for (Object o : list) {
+            if (!(o instanceof ShapedMap)) return null;
+            KeyShape other = ((ShapedMap) o).getShape();
+            if (other != shape && !other.equals(shape)) return null;
+        }
+        Column[] columns = new Column[shape.size()];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = Column.of(list, c);
+        }
+        return new ColumnarList(shape, list.size(), columns);
+    }
+
+    private ColumnarList(@NotNull KeyShape shape, int size, Column[] columns) {
+        this.shape = shape;
+        this.size = size;
+        this.columns = columns;
+    }
+
+    /** The keys each row has. */
+    public @NotNull KeyShape getShape() {
+        return shape;
+    }
+
+    /** Which column holds that key, or -1 if none. */
+    public int columnIndex(String key) {
+        return shape.indexOf(key);
+    }
+
+    /** The value of one field of one row, without building the row's map. */
+    public Object getField(int row, int column) {
+        return columns[column].get(row);
+    }
+
+    /** True if every value in the column is a number, string, boolean or null. */
+    public boolean isScalarColumn(int column) {
+        return !(columns[column] instanceof ObjectColumn) || ((ObjectColumn) columns[column]).scalarsOnly;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Index: " + row + ", size: " + size);
+        Object[] values = new Object[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            values[c] = columns[c].get(row);
+        }
+        return new ShapedMap(shape, values);
+    }
+
+    private static boolean fitsInInt(long v) {
+        return v == (int) v;
+    }
+
+    private static boolean isScalar(Object o) {
+        return null == o || o instanceof String || o instanceof Number || o instanceof Boolean;
+    }
+
+    /** One field, for all the rows. */
+    private abstract static class Column {
+        abstract Object get(int row);
+
+        // Pick the most compact column type that can hold all the values.
+        static Column of(List<Object> rows, int c) {
+            boolean ints = true, doubles = true, booleans = true, strings = true;
+            for (Object row : rows) {
+                Object v = ((ShapedMap) row).getAt(c);
+                if (null == v) continue;
+                // Jackson only uses Long for values that don't fit in an int,
+                // so that's how we'll know which one to give back.
+                ints &= (v instanceof Integer) || (v instanceof Long && !fitsInInt((Long) v));
+                doubles &= v instanceof Double;
+                booleans &= v instanceof Boolean;
+                strings &= v instanceof String;
+            }
+            if (ints) return new LongColumn(rows, c);
+            if (doubles) return new DoubleColumn(rows, c);
+            if (booleans) return new BooleanColumn(rows, c);
+            if (strings) return new StringColumn(rows, c);
+            return new ObjectColumn(rows, c);
+        }
+    }
+
+    private static class LongColumn extends Column {
+        private final long[] values;
+        private final BitSet nulls = new BitSet();
+
+        LongColumn(List<Object> rows, int c) {
+            values = new long[rows.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object v = ((ShapedMap) rows.get(i)).getAt(c);
+                if (null == v) {
+                    nulls.set(i);
+                } else {
+                    values[i] = ((Number) v).longValue();
+                }
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            if (nulls.get(row)) return null;
+            long v = values[row];
+            if (fitsInInt(v)) return (int) v;
+            return v;
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+        private final double[] values;
+        private final BitSet nulls = new BitSet();
+
+        DoubleColumn(List<Object> rows, int c) {
+            values = new double[rows.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object v = ((ShapedMap) rows.get(i)).getAt(c);
+                if (null == v) {
+                    nulls.set(i);
+                } else {
+                    values[i] = (Double) v;
+                }
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            if (nulls.get(row)) return null;
+            return values[row];
+        }
+    }
+
+    private static class BooleanColumn extends Column {
+        private final BitSet values = new BitSet();
+        private final BitSet nulls = new BitSet();
+
+        BooleanColumn(List<Object> rows, int c) {
+            for (int i = 0; i < rows.size(); i++) {
+                Object v = ((ShapedMap) rows.get(i)).getAt(c);
+                if (null == v) {
+                    nulls.set(i);
+                } else if ((Boolean) v) {
+                    values.set(i);
+                }
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            if (nulls.get(row)) return null;
+            return values.get(row);
+        }
+    }
+
+    // Each distinct string is stored once; rows hold its number (-1 for null).
+    private static class StringColumn extends Column {
+        private final int[] codes;
+        private final String[] dictionary;
+
+        StringColumn(List<Object> rows, int c) {
+            codes = new int[rows.size()];
+            HashMap<String, Integer> seen = new HashMap<>();
+            for (int i = 0; i < codes.length; i++) {
+                String v = (String) ((ShapedMap) rows.get(i)).getAt(c);
+                if (null == v) {
+                    codes[i] = -1;
+                    continue;
+                }
+                Integer code = seen.get(v);
+                if (null == code) {
+                    code = seen.size();
+                    seen.put(v, code);
+                }
+                codes[i] = code;
+            }
+            dictionary = new String[seen.size()];
+            for (var e : seen.entrySet()) {
+                dictionary[e.getValue()] = e.getKey();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            int code = codes[row];
+            return (code < 0 ? null : dictionary[code]);
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+        private final Object[] values;
+        private final boolean scalarsOnly;
+
+        ObjectColumn(List<Object> rows, int c) {
+            values = new Object[rows.size()];
+            boolean scalars = true;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ((ShapedMap) rows.get(i)).getAt(c);
+                scalars &= isScalar(values[i]);
+            }
+            scalarsOnly = scalars;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+    }
+}
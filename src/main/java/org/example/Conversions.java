@@ -56,15 +56,19 @@ public class Conversions {
     // convert either a string or a seconds/ms/us-since-epoch.
     public static @Nullable Date nodeToDate(@Nullable JsonNodeValue node) {
         if (null==node) return null;
-        try {
-            double sinceEpoch = node.asDouble();
-            long somethingSinceEpoch = (long)sinceEpoch;
+        return valueToDate(node.getValue());
+    }
+
+    // Same, from the value itself.
+    public static @Nullable Date valueToDate(@Nullable Object value) {
+        Double sinceEpoch = JsonNodeValue.toDouble(value);
+        if (null!=sinceEpoch) {
+            long somethingSinceEpoch = sinceEpoch.longValue();
             return Conversions.epochToDate(somethingSinceEpoch);
-        } catch (NumberFormatException | NullPointerException _x) {
-            // value isn't a number. Maybe it's a string?
-            if (!(node.getValue() instanceof String)) return null;
-            return stringToDate((String)node.getValue());
         }
+        // value isn't a number. Maybe it's a string?
+        if (!(value instanceof String)) return null;
+        return stringToDate((String)value);
     }
 
     // parse a date if it's just the right way
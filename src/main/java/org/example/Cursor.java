@@ -21,6 +21,10 @@ public class Cursor {
 
     private final DescentStep step;
     private final Cursor parent;
+    // How many steps from the root, and a hash of those steps. Two cursors
+    // with the same steps have the same hash.
+    private final int depth;
+    private final int hash;
     // This is set immediately after making the cursor, and then no longer
     // modified.
     private JsonNode data = null;
@@ -28,6 +32,8 @@ public class Cursor {
     public Cursor() {
         this.step = null;
         this.parent = null;
+        this.depth = 0;
+        this.hash = 0;
     }
 
     // copy ctor
@@ -35,11 +41,15 @@ public class Cursor {
         this.step = old.step;
         this.parent = old.parent;
         this.data = old.data;
+        this.depth = old.depth;
+        this.hash = old.hash;
     }
 
     private Cursor(DescentStep step, Cursor parent) {
         this.step = step;
         this.parent = parent;
+        this.depth = parent.depth + 1;
+        this.hash = 31 * parent.hash + step.hashCode();
     }
 
     public void setData(JsonNode data) {
@@ -59,6 +69,41 @@ public class Cursor {
         return this.parent;
     }
 
+    /** How many steps it takes to get here from the root. */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /** A hash of the steps, so cursors with the same path have the same one. */
+    public int getPathHash() {
+        return this.hash;
+    }
+
+    /** True if the other cursor goes through the same steps as us (not necessarily in the same tree). */
+    public boolean samePath(Cursor other) {
+        if (other.depth != depth || other.hash != hash) return false;
+        return sameStepsUp(this, other);
+    }
+
+    // Both cursors are at the same depth.
+    private static boolean sameStepsUp(Cursor a, Cursor b) {
+        while (a != b && a.depth > 0) {
+            if (!a.step.equals(b.step)) return false;
+            a = a.parent;
+            b = b.parent;
+        }
+        return true;
+    }
+
+    // Our ancestor (or us) at that depth.
+    private Cursor atDepth(int wantedDepth) {
+        Cursor cur = this;
+        while (cur.depth > wantedDepth) {
+            cur = cur.parent;
+        }
+        return cur;
+    }
+
     public List<DescentStep> asListOfSteps() {
         if (null==parent || parent==this) {
             // no parent, empty list
@@ -86,14 +131,9 @@ public class Cursor {
 
     // note: x.ancestorOf(x) returns false.
     public boolean ancestorOf(Cursor maybeDescendant) {
-        List<DescentStep> mySteps = this.asListOfSteps();
-        List<DescentStep> theirSteps = maybeDescendant.asListOfSteps();
         // I'm their ancestor if my steps are a prefix of theirs.
-        if (theirSteps.size() <= mySteps.size()) return false;
-        for (int i=0; i< mySteps.size(); i++) {
-            if (!mySteps.get(i).equals(theirSteps.get(i))) return false;
-        }
-        return true;
+        if (maybeDescendant.depth <= this.depth) return false;
+        return samePath(maybeDescendant.atDepth(this.depth));
     }
 
     // when you call this you still have to set the value.
@@ -116,10 +156,9 @@ public class Cursor {
         if (null==node) return false;
         if (getData()==node) return true;
         if (null==fork) return false;
-        String forkStr = fork.toString();
-        String here = this.toString();
-        String there = node.whereIAm.toString();
-        if (!there.startsWith(forkStr)) return false;
+        Cursor there = node.whereIAm;
+        // the node has to be under the fork (or be it).
+        if (there.depth < fork.depth || !fork.samePath(there.atDepth(fork.depth))) return false;
         // remove one step from "here" and "there" after the pivot
         // and check if they're the same.
 
@@ -136,7 +175,6 @@ public class Cursor {
             // types must match all the way up
             if (myAncestors.step.getClass() != itsAncestors.step.getClass()) return false;
             // now either same value, or we're at pivot.
-            DescentStep itsStep = (DescentStep) itsAncestors.step;
             if (!myAncestors.step.equals(itsAncestors.step)) {
                 if (itsAncestors.parent != fork || myAncestors.parent != fork) return false;
                 return true;
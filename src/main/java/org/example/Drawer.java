@@ -9,8 +9,11 @@ import org.jetbrains.annotations.Nullable;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Locale;
+import java.util.function.ObjIntConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,10 +25,10 @@ public class Drawer {
 
     static @Nullable DecimalFormat decimalFormat;
 
-    // Where on the screen we drew the cursor.
+    // Where on the screen we drew the cursor (or would have, if it's off the screen).
     // If that was too low, maybe you'll want to adjust and try again?
     private int cursorScreenLine = 0;
-    private boolean drewCursor = false;
+    private boolean foundCursor = false;
     // number of "sub-cursor" steps available. This is to allow you to scroll through
     // a string that takes up multiple lines on the screen.
     public int substepsAvailable;
@@ -33,6 +36,14 @@ public class Drawer {
     public Cursor substepCursor  = null;
     // 0=dunno, 1=down, -1=up
     public int directionOfTravel = 0;
+    // The node at the primary cursor, and for each of its ancestors, which child leads to it.
+    // With this we can find the cursor in a subtree whose line count is cached without going
+    // through the whole subtree. Null if we couldn't find the cursor in the tree we're drawing,
+    // then we don't use the cached counts.
+    private @Nullable JsonNode cursorNode;
+    private final IdentityHashMap<JsonNode, JsonNode> cursorPath = new IdentityHashMap<>();
+    // For tests: check that each node we draw takes as many lines as we measure for it.
+    boolean checkHeights = false;
 
     public static void printMaybeReversed(TextGraphics g, TerminalPosition pos, String s, boolean bolded) {
         if (bolded) {
@@ -73,6 +84,7 @@ public class Drawer {
         Collection<String> keys = jsonMap.getKeysInOrder();
         int indent = start.getColumn();
         TerminalPosition pos = start;
+        boolean outerFoldedContext = inFoldedContext;
 
         // we mark out aggregate data so it is visually distinct.
         String prefix = "";
@@ -103,9 +115,21 @@ public class Drawer {
         int myIndent = INDENT;
         //if (inSyntheticContext) myIndent += 3;
         pos = pos.withRelativeColumn(myIndent).withRelativeRow(1);
+        int rows = g.getSize().getRows();
+        int columns = g.getSize().getColumns();
 
         line += 1;
-        for (JsonNodeIterator it = jsonMap.iterateChildren(true); it!=null; it=it.next()) {
+        JsonNodeIterator<?> first = jsonMap.iterateChildren(true);
+        if (pos.getRow() < 0) {
+            // skip straight to the first child that's on the screen.
+            int position = firstChildOnScreen(columns, start.getRow(), start.getColumn(), initialOffset, jsonMap, outerFoldedContext, inSyntheticContext);
+            if (position > 0) {
+                line = jsonMap.linesBefore[position];
+                pos = pos.withRow(start.getRow() + line);
+                first = jsonMap.iterateChildrenFrom(position);
+            }
+        }
+        for (JsonNodeIterator<?> it = first; it!=null; it=it.next()) {
             JsonNode child = it.get();
             String key = (String)it.key();
             if (inFoldedContext && !child.hasPins()) {
@@ -115,8 +139,26 @@ public class Drawer {
             String aggComment = "";
             if (inSyntheticContext && child.aggregateComment != null && !child.aggregateComment.isEmpty()) {
                 aggComment = child.aggregateComment + " ";
+            }
+            // Only draw what's on the screen. Above it we just count lines, and
+            // printJsonTree already found the cursor so we can stop at the bottom.
+            int row = pos.getRow();
+            if (row >= rows) break;
+            if (row < 0) {
+                int height = measureChild(columns, pos.getColumn(), jsonMap, it, inFoldedContext, inSyntheticContext);
+                if (row + height <= 0) {
+                    line += height;
+                    pos = pos.withRelativeRow(height);
+                    continue;
+                }
+            }
+            if (!aggComment.isEmpty()) {
                 printMaybeReversed(g, pos.withColumn(2), "//", false);
             }
+            // where the child goes: the line counts use the same layout.
+            childLayout(pos.getColumn(), jsonMap, it, inSyntheticContext);
+            int offset = childOffset;
+            boolean synthetic = childSynthetic;
 
             TextGraphics g2 = Theme.clone(g);
             possiblyChangeToDeletedColors(g2, child, deleter);
@@ -132,7 +174,7 @@ public class Drawer {
             // normal case, user data.
             if (child instanceof JsonNodeValue) {
                 int height;
-                if (inSyntheticContext) {
+                if (childTakesOneLine) {
                     printGutterIndicator(g, pos, child, 1, deleter);
                     height = 1;
                 } else {
@@ -151,24 +193,19 @@ public class Drawer {
                             pos4 = pos4.withColumn(5);
                         }
                         g2.putString(pos4, intro);
-                        //pos4 = pos.withColumn(pos4.getColumn() + intro.length());
-                        pos4 = pos.withRelativeColumn(TextWidth.length(intro)+1);
                     } else {
                         g2.putString(pos4, ": ");
                     }
-                    height = printJsonSubtree(g2, pos, pos4.getColumn() - pos.getColumn() + 2, child, inFoldedContext, inSyntheticContext || v.isSynthetic(), deleter);
+                    height = printJsonSubtree(g2, pos, offset, child, inFoldedContext, synthetic, deleter);
                 }
                 line += height;
                 pos = pos.withRelativeRow(height);
             } else {
                 myG.putString(pos2, ": ");
-                int childOffset = TextWidth.length(aggComment) + TextWidth.length(key) + 4;
-                int childHeight = printJsonSubtree(g, pos, childOffset, child, inFoldedContext, inSyntheticContext, deleter);
+                int childHeight = printJsonSubtree(g, pos, offset, child, inFoldedContext, synthetic, deleter);
                 line += childHeight;
                 pos = pos.withRelativeRow(childHeight);
             }
-            // stop drawing if we're off the screen.
-            if (drewCursor && pos.getRow() > g.getSize().getRows() + 10) break;
         }
         line += 1;
         pos = pos.withRelativeColumn(-myIndent);
@@ -196,46 +233,81 @@ public class Drawer {
     // Returns how many lines it went down, beyond the initial one.
     // jsonObj can be String, List, LinkedHashMap<String, Object>, ...
     public int printJsonTree(TextGraphics g, TerminalPosition start, int initialOffset, JsonNode json, Deleter deleter) {
-        this.drewCursor = false;
+        this.foundCursor = false;
+        findCursorPath(json);
+        // Find the cursor first, so drawing can stop at the bottom of the screen.
+        locateCursor(g.getSize().getColumns(), start.getRow(), start.getColumn(), initialOffset, json, false, false);
         return printJsonSubtree(g, start, initialOffset, json, false, false, deleter);
     }
 
+    /**
+     * Which line the primary cursor would be drawn on, counting from the top of the tree.
+     * Same as getCursorLineLastTime() after drawing the whole tree. -1 if it's not shown.
+     */
+    public int lineOfCursor(JsonNode root, int columns) {
+        this.foundCursor = false;
+        findCursorPath(root);
+        locateCursor(columns, 0, 0, 0, root, false, false);
+        return (foundCursor ? cursorScreenLine : -1);
+    }
+
+    /**
+     * The node drawn at that line (counting from the top of the tree). For lines that
+     * only hold a closing bracket, the last thing in that container.
+     */
+    public JsonNode nodeAtLine(JsonNode root, int line, int columns) {
+        return nodeAtLine(columns, 0, 0, root, false, false, Math.max(0, line));
+    }
+
+    private JsonNode nodeAtLine(int columns, int column, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext, int line) {
+        int[] before = linesBefore(columns, column, initialOffset, json, inFoldedContext, inSyntheticContext, Integer.MAX_VALUE, line);
+        if (null == before || line < before[0]) return json;
+        int last = json.linesKnown - 1;
+        if (before[last] == before[0]) return json;
+        // past our closing bracket: we only get there if we know all our lines.
+        if (line >= before[last]) line = before[last] - 1;
+        // the last child that starts at or before the line. Hidden children start
+        // where the next one does, so they never win.
+        int lo = 0, hi = last - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (before[mid] <= line) lo = mid;
+            else hi = mid - 1;
+        }
+        JsonNodeIterator<?> it = json.iterateChildrenFrom(lo);
+        if (null == it) return json;
+        JsonNode child = it.get();
+        childLayout(column + INDENT, json, it, inSyntheticContext);
+        if (childTakesOneLine) return child;
+        return nodeAtLine(columns, childColumn, childOffset, child, childrenFolded(json, inFoldedContext), childSynthetic, line - before[lo]);
+    }
+
+    private void findCursorPath(JsonNode root) {
+        cursorPath.clear();
+        cursorNode = null;
+        JsonNode target = root.rootInfo.userCursor.getData();
+        JsonNode cur = target;
+        while (cur != root) {
+            JsonNode dad = cur.getParent();
+            if (null == dad || dad == cur) {
+                // not in this tree.
+                cursorPath.clear();
+                return;
+            }
+            cursorPath.put(dad, cur);
+            cur = dad;
+        }
+        cursorNode = target;
+    }
+
     public void printGutterIndicator(TextGraphics g, TerminalPosition start, JsonNode json, int lines, Deleter deleter) {
         // Make sure the text is on top of the indicators.
         g = g.newTextGraphics(TerminalPosition.TOP_LEFT_CORNER, new TerminalSize(start.getColumn(), g.getSize().getRows()));
         if (json.isAtPrimaryCursor()) {
-            int offset = 0;
-            if (json.whereIAm == substepCursor) {
-                // only strings have substeps. That's just the way it is.
-                if ((json instanceof JsonNodeValue) && (json.getValue() instanceof String)) {
-                    substepsAvailable = lines;
-                } else {
-                    substepsAvailable = 1;
-                }
-                if (substep >= substepsAvailable) substep = substepsAvailable-1;
-                offset = substep;
-            } else {
-                // only go inside values, containers we just go to the next value inside of them.
-                if ((json instanceof JsonNodeValue) && (json.getValue() instanceof String)) {
-                    substepsAvailable = lines;
-                } else {
-                    substepsAvailable = 1;
-                }
-                substepCursor = json.whereIAm;
-                if (directionOfTravel == -1) {
-                    // going up, start at bottom
-                    substep = substepsAvailable-1;
-                    offset = substep;
-                } else {
-                    substep = 0;
-                    offset = substep;
-                }
-            }
+            int offset = noteCursor(start.getRow(), json, lines);
             if (json.parent!=null) {
                 g.putString(start.withColumn(0).withRelativeRow(offset), ">>");
             }
-            this.cursorScreenLine = start.getRow() + offset;
-            this.drewCursor = true;
         }
         if (deleter!=null && deleter.targets(json)) {
             g.putString(start.withColumn(0), "×");
@@ -249,18 +321,65 @@ public class Drawer {
         }
     }
 
+    // The primary cursor is on this node, which starts at this row: remember where,
+    // and update the substeps. Returns which of the node's lines the cursor is on.
+    private int noteCursor(int row, JsonNode json, int lines) {
+        int offset = 0;
+        if (json.whereIAm == substepCursor) {
+            // only strings have substeps. That's just the way it is.
+            if ((json instanceof JsonNodeValue) && (json.getValue() instanceof String)) {
+                substepsAvailable = lines;
+            } else {
+                substepsAvailable = 1;
+            }
+            if (substep >= substepsAvailable) substep = substepsAvailable-1;
+            offset = substep;
+        } else {
+            // only go inside values, containers we just go to the next value inside of them.
+            if ((json instanceof JsonNodeValue) && (json.getValue() instanceof String)) {
+                substepsAvailable = lines;
+            } else {
+                substepsAvailable = 1;
+            }
+            substepCursor = json.whereIAm;
+            if (directionOfTravel == -1) {
+                // going up, start at bottom
+                substep = substepsAvailable-1;
+                offset = substep;
+            } else {
+                substep = 0;
+                offset = substep;
+            }
+        }
+        this.cursorScreenLine = row + offset;
+        this.foundCursor = true;
+        return offset;
+    }
+
     // Returns how many lines it went down, beyond the initial one.
     // jsonObj can be String, List, LinkedHashMap<String, Object>, ...
     public int printJsonSubtree(TextGraphics g, TerminalPosition start, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext, Deleter deleter) {
         int lines = innerPrintJsonSubtree(g, start, initialOffset, json, inFoldedContext, inSyntheticContext, deleter);
         printGutterIndicator(g, start, json, lines, deleter);
+        if (checkHeights) checkHeight(g, start, initialOffset, json, inFoldedContext, inSyntheticContext, lines);
         return lines;
     }
 
+    // We drew that node in that many lines: make sure measureSubtree agrees.
+    private void checkHeight(TextGraphics g, TerminalPosition start, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext, int lines) {
+        // Only if it's all on the screen: past the bottom, we stop drawing.
+        if (start.getRow() < 0 || start.getRow() + lines > g.getSize().getRows()) return;
+        int measured = measureSubtree(g.getSize().getColumns(), start.getColumn(), initialOffset, json, inFoldedContext, inSyntheticContext);
+        if (measured != lines) {
+            throw new InvariantException("Drew " + json.asCursor() + " in " + lines + " lines, but measured " + measured);
+        }
+    }
+
     public int innerPrintJsonSubtree(TextGraphics g, TerminalPosition start, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext, Deleter deleter) {
         TextGraphics myG = Theme.clone(g);
         boolean beingDeleted = possiblyChangeToDeletedColors(myG, json, deleter);
         int line = 0;
+        boolean outerFoldedContext = inFoldedContext;
         if (json instanceof JsonNodeValue) {
             JsonNodeValue jsonValue = (JsonNodeValue) json;
             int lines = 0;
@@ -303,16 +422,8 @@ public class Drawer {
                     printMaybeReversed(g_str, start.withRelativeColumn(initialOffset), str, json.isAtCursor());
                     down = 1;
                 } else {
-                    int index = 0;
-                    int zeroes = 0;
-                    while (index < str.length() && zeroes<2) {
-                        int room = TextWidth.charsInSpace(str, index, w);
-                        String oneLine = str.substring(index, index+room);
-                        printMaybeReversed(g_str, start.withRelative(initialOffset, down), oneLine, json.isAtCursor());
-                        index += room;
-                        down++;
-                        if (room==0) zeroes++;
-                    }
+                    TerminalPosition at = start.withRelativeColumn(initialOffset);
+                    down = wrapString(str, w, (oneLine, row) -> printMaybeReversed(g_str, at.withRelativeRow(row), oneLine, json.isAtCursor()));
                 }
                 if (json.isAtPrimaryCursor()) {
                     substepsAvailable = down;
@@ -377,32 +488,51 @@ public class Drawer {
             TerminalPosition pos3 = pos.withRelativeColumn(INDENT);
             line += 1;
             pos3 = pos3.withRelativeRow(1);
-
-            for (JsonNodeIterator it = jsonList.iterateChildren(true); it!=null; it=it.next()) {
+            int rows = g.getSize().getRows();
+            int columns = g.getSize().getColumns();
+
+            JsonNodeIterator<?> first = jsonList.iterateChildren(true);
+            if (pos3.getRow() < 0) {
+                // skip straight to the first child that's on the screen.
+                int position = firstChildOnScreen(columns, start.getRow(), start.getColumn(), initialOffset, jsonList, outerFoldedContext, inSyntheticContext);
+                if (position > 0) {
+                    line = jsonList.linesBefore[position];
+                    pos3 = pos3.withRow(start.getRow() + line);
+                    first = jsonList.iterateChildrenFrom(position);
+                }
+            }
+            for (JsonNodeIterator<?> it = first; it!=null; it=it.next()) {
                 JsonNode child = it.get();
                 if (inFoldedContext && !child.hasPins()) {
                     // skip that one, we're folded and it's not pinned.
                     continue;
                 }
+                // Only draw what's on the screen. Above it we just count lines, and
+                // printJsonTree already found the cursor so we can stop at the bottom.
+                int row = pos3.getRow();
+                if (row >= rows) break;
+                if (row < 0) {
+                    int height = measureChild(columns, pos3.getColumn(), jsonList, it, inFoldedContext, inSyntheticContext);
+                    if (row + height <= 0) {
+                        line += height;
+                        pos3 = pos3.withRelativeRow(height);
+                        continue;
+                    }
+                }
+                // where the child goes: the line counts use the same layout.
+                // Aggregates move to the right to make room for the comment symbols.
+                childLayout(pos3.getColumn(), jsonList, it, inSyntheticContext);
+                TerminalPosition pos4 = pos3.withColumn(childColumn);
                 TextColor oldColor = g.getForegroundColor();
-                String intro = "";
-                TerminalPosition pos4 = pos3;
                 if (it.isAggregate()) {
                     g.setForegroundColor(Theme.selected.synthetic);
-                    g.putString(pos4.withColumn(2), "//");
-                    intro = jsonList.aggregateComment + "() ";
-                    if (pos4.getColumn()<=5) {
-                        // move to the right to make room for the comment symbols
-                        pos4 = pos4.withColumn(5);
-                    }
-                    g.putString(pos4, intro);
+                    g.putString(pos3.withColumn(2), "//");
+                    g.putString(pos4, jsonList.aggregateComment + "() ");
                 }
-                int height = printJsonSubtree(g, pos4, intro.length(), child, inFoldedContext, inSyntheticContext || it.isAggregate(), deleter);
+                int height = printJsonSubtree(g, pos4, childOffset, child, inFoldedContext, childSynthetic, deleter);
                 g.setForegroundColor(oldColor);
                 line += height;
                 pos3 = pos3.withRelativeRow(height);
-                // stop drawing if we're off the screen.
-                if (drewCursor && pos3.getRow() > g.getSize().getRows() + 10) break;
             }
             pos = pos3.withRelativeColumn(-INDENT);
             myG.putString(pos, "]");
@@ -419,6 +549,208 @@ public class Drawer {
         throw new RuntimeException("Unrecognized type: " + json.getClass());
     }
 
+    // How many lines printJsonSubtree would take to draw this, without drawing it.
+    // Where each child goes comes from childLayout and string wrapping from wrapString,
+    // same as when drawing. Set checkHeights to compare the two.
+    // The result is cached in the node (along with where each child starts) until something
+    // changes under it, so measuring again is O(1).
+    int measureSubtree(int columns, int column, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext) {
+        // Everything that changes the layout but isn't stored in the node itself.
+        int width = columns - column;
+        int context = initialOffset * 4 + (inFoldedContext ? 1 : 0) + (inSyntheticContext ? 2 : 0);
+        if (json.hasCachedLines(width, context)) return json.cachedLines;
+        int lines;
+        if (json instanceof JsonNodeValue) {
+            lines = valueLines(columns, column, initialOffset, json, inFoldedContext);
+        } else if (inFoldedContext && !json.getPinned() && !json.hasPins() && json instanceof JsonNodeMap) {
+            lines = 0;
+        } else {
+            int[] before = linesBefore(columns, column, initialOffset, json, inFoldedContext, inSyntheticContext, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            lines = (null == before ? 1 : before[json.linesKnown - 1] + 1);
+        }
+        json.cachedLines = lines;
+        json.cachedLinesWidth = width;
+        json.cachedLinesContext = context;
+        return lines;
+    }
+
+    private int valueLines(int columns, int column, int initialOffset, JsonNode json, boolean inFoldedContext) {
+        if (inFoldedContext && !json.hasPins()) return 0;
+        int lines = (json.getAnnotation().isEmpty() ? 0 : 1);
+        Object value = json.getValue();
+        if (!(value instanceof String) || json.getFolded()) return lines + 1;
+        return lines + stringHeight("\"" + value + "\"", columns - column - initialOffset);
+    }
+
+    // Whether the children of this container are in a folded context (only pinned ones are shown).
+    private static boolean childrenFolded(JsonNode json, boolean inFoldedContext) {
+        return (json.getFolded() || inFoldedContext) && !json.getPinned();
+    }
+
+    // For a container: the line (counting from its first one) where each of its children
+    // starts, then that of its closing bracket. Null if the children aren't shown.
+    // Like the line count, this is cached in the node. We only measure the children
+    // we need: at least up to that position, and until one goes past that line. The
+    // json.linesKnown first entries are filled in.
+    private int @Nullable [] linesBefore(int columns, int column, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext, int upTo, int untilLine) {
+        int width = columns - column;
+        int context = initialOffset * 4 + (inFoldedContext ? 1 : 0) + (inSyntheticContext ? 2 : 0);
+        if (json.cachedLinesWidth != width || json.cachedLinesContext != context) {
+            json.cachedLines = -1;
+            json.linesBefore = null;
+            json.cachedLinesWidth = width;
+            json.cachedLinesContext = context;
+        }
+        if (json instanceof JsonNodeValue) return null;
+        boolean folded = childrenFolded(json, inFoldedContext);
+        if (folded && !json.hasPins()) return null;
+        int count = json.childCount() + (null == json.aggregate ? 0 : 1);
+        int[] before = json.linesBefore;
+        if (null == before) {
+            before = new int[count + 1];
+            before[0] = 1;
+            json.linesKnown = 1;
+        } else if (before.length != count + 1) {
+            // we grew, the lines before the new children don't change.
+            before = Arrays.copyOf(before, count + 1);
+            json.linesKnown = Math.min(json.linesKnown, count + 1);
+        }
+        json.linesBefore = before;
+        int position = json.linesKnown - 1;
+        JsonNodeIterator<?> it = null;
+        while (position < count && (position < upTo || before[position] <= untilLine)) {
+            if (null == it) it = json.iterateChildrenFrom(position);
+            int lines = 0;
+            if (null != it) {
+                if (!folded || it.get().hasPins()) lines = measureChild(columns, column + INDENT, json, it, folded, inSyntheticContext);
+                it = it.next();
+            }
+            before[position + 1] = before[position] + lines;
+            position++;
+        }
+        json.linesKnown = position + 1;
+        return before;
+    }
+
+    // The layout of a container's child, set by childLayout.
+    private int childColumn;
+    private int childOffset;
+    private boolean childSynthetic;
+    // A value in a synthetic map is always shown on one line.
+    private boolean childTakesOneLine;
+
+    // Where the child the iterator is on goes, when its parent's children start at that
+    // column (see the drawing code). Sets childColumn, childOffset, childSynthetic
+    // and childTakesOneLine.
+    private void childLayout(int column, JsonNode json, JsonNodeIterator<?> it, boolean inSyntheticContext) {
+        JsonNode child = it.get();
+        childColumn = column;
+        childOffset = 0;
+        childSynthetic = inSyntheticContext;
+        childTakesOneLine = false;
+        if (json instanceof JsonNodeList) {
+            if (it.isAggregate()) {
+                childOffset = (json.aggregateComment + "() ").length();
+                if (childColumn<=5) childColumn = 5;
+                childSynthetic = true;
+            }
+            return;
+        }
+        String key = (String) it.key();
+        String aggComment = "";
+        if (inSyntheticContext && child.aggregateComment != null && !child.aggregateComment.isEmpty()) {
+            aggComment = child.aggregateComment + " ";
+        }
+        if (child instanceof JsonNodeValue) {
+            if (inSyntheticContext) {
+                childTakesOneLine = true;
+            } else if (it.isAggregate()) {
+                childOffset = TextWidth.length(key + "() ") + 1 + 2;
+            } else {
+                childOffset = TextWidth.length(aggComment) + 2 + TextWidth.length(key) + 2;
+            }
+            childSynthetic = inSyntheticContext || child.isSynthetic();
+            return;
+        }
+        childOffset = TextWidth.length(aggComment) + TextWidth.length(key) + 4;
+    }
+
+    // How many lines the child the iterator is on takes (see childLayout).
+    private int measureChild(int columns, int column, JsonNode json, JsonNodeIterator<?> it, boolean inFoldedContext, boolean inSyntheticContext) {
+        childLayout(column, json, it, inSyntheticContext);
+        if (childTakesOneLine) return 1;
+        return measureSubtree(columns, childColumn, childOffset, it.get(), inFoldedContext, childSynthetic);
+    }
+
+    // Note where the primary cursor is, if it's in this subtree (which starts at that row).
+    // We follow cursorPath down, only measuring what's before the cursor at each level.
+    private void locateCursor(int columns, int row, int column, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext) {
+        if (json == cursorNode) {
+            // only strings need their line count, for the substeps.
+            int lines = 1;
+            if (json instanceof JsonNodeValue) {
+                lines = measureSubtree(columns, column, initialOffset, json, inFoldedContext, inSyntheticContext);
+                if (lines == 0) return;
+            }
+            noteCursor(row, json, lines);
+            return;
+        }
+        JsonNode next = cursorPath.get(json);
+        if (null == next) return;
+        int position = json.positionOf(next);
+        if (position < 0) return;
+        int[] before = linesBefore(columns, column, initialOffset, json, inFoldedContext, inSyntheticContext, position, Integer.MIN_VALUE);
+        // folded away, the cursor isn't shown.
+        if (null == before) return;
+        boolean folded = childrenFolded(json, inFoldedContext);
+        if (folded && !next.hasPins()) return;
+        JsonNodeIterator<?> it = json.iterateChildrenFrom(position);
+        if (null == it) return;
+        row += before[position];
+        childLayout(column + INDENT, json, it, inSyntheticContext);
+        if (childTakesOneLine) {
+            if (next == cursorNode) noteCursor(row, next, 1);
+            return;
+        }
+        locateCursor(columns, row, childColumn, childOffset, next, folded, childSynthetic);
+    }
+
+    // For a container that starts above the screen (at that row): the position of
+    // its first child that isn't entirely above the screen.
+    private int firstChildOnScreen(int columns, int row, int column, int initialOffset, JsonNode json, boolean inFoldedContext, boolean inSyntheticContext) {
+        int[] before = linesBefore(columns, column, initialOffset, json, inFoldedContext, inSyntheticContext, 0, -row);
+        if (null == before) return 0;
+        int lo = 0, hi = json.linesKnown - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (row + before[mid + 1] > 0) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // How many lines an unfolded string takes when wrapped to that width.
+    static int stringHeight(String str, int width) {
+        return wrapString(str, width, null);
+    }
+
+    // Cuts an unfolded string into lines that fit in that width, and gives each one
+    // with its number to out (if not null). Returns how many lines that is.
+    // Both drawing and stringHeight go through here, so they always agree.
+    static int wrapString(String str, int width, @Nullable ObjIntConsumer<String> out) {
+        int index = 0;
+        int zeroes = 0;
+        int down = 0;
+        while (index < str.length() && zeroes<2) {
+            int room = TextWidth.charsInSpace(str, index, width);
+            if (null!=out) out.accept(str.substring(index, index+room), down);
+            index += room;
+            down++;
+            if (room==0) zeroes++;
+        }
+        return down;
+    }
+
     public static String formatNumber(Object maybeNumber) {
         if (null==maybeNumber) return "null";
         String str = maybeNumber.toString();
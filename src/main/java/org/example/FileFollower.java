@@ -0,0 +1,94 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Watches a JSONL file that keeps growing, like "tail -f".
+ *
+ * We remember how far we've read, and each call to readNew() parses only
+ * the complete lines that were added since. A line that's still being written
+ * (no newline yet) is left for next time.
+ */
+public class FileFollower {
+
+    // The most we read in one go, so a big file is read in pieces.
+    private static final int MAX_CHUNK = 64 * 1024 * 1024;
+
+    private final Path path;
+    // Everything before this has been read. Always just after a newline.
+    private long offset = 0;
+    private int skippedLines = 0;
+    private boolean truncated = false;
+
+    public FileFollower(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Parse the complete lines added since the last call (at most MAX_CHUNK bytes' worth).
+     * Lines that aren't valid JSON are skipped and counted in getSkippedLines().
+     * Returns an empty list if there's nothing new.
+     */
+    public List<Object> readNew() throws IOException {
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                // The file was truncated or replaced: start over from its beginning.
+                offset = 0;
+                truncated = true;
+            }
+            if (size == offset) return new ArrayList<>();
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(MAX_CHUNK, size - offset));
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, offset + buf.position()) < 0) break;
+            }
+            bytes = Arrays.copyOf(buf.array(), buf.position());
+        }
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') end--;
+        if (end == 0) {
+            if (bytes.length == MAX_CHUNK) throw new IOException("Line too long at offset " + offset);
+            // no complete line yet.
+            return new ArrayList<>();
+        }
+        offset += end;
+        try {
+            return ChunkedParser.readAll(new ByteArrayInputStream(bytes, 0, end), JsonNode.READER);
+        } catch (IOException iox) {
+            // Some lines are broken, we'll keep the ones we can read.
+        }
+        String[] lines = new String(bytes, 0, end, StandardCharsets.UTF_8).split("\r?\n");
+        List<Object> ret = new ArrayList<>();
+        for (String line : lines) {
+            if (line.isEmpty()) continue;
+            try {
+                ret.add(JsonNode.READER.readValue(line));
+            } catch (IOException iox) {
+                skippedLines++;
+            }
+        }
+        return ret;
+    }
+
+    /** How many lines we skipped so far because they weren't valid JSON. */
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    /** True if the file got shorter since last time we checked. Resets the flag. */
+    public boolean checkTruncated() {
+        boolean ret = truncated;
+        truncated = false;
+        return ret;
+    }
+}
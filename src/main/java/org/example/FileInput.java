@@ -0,0 +1,201 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens input files, decompressing them on the fly if they're gzipped.
+ * We look at the first bytes rather than the file name, so "foo.json" works
+ * even if it's compressed.
+ */
+public class FileInput {
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    // If the first value is longer than that, we take the file to be a single document.
+    private static final int MAX_FIRST_VALUE_BYTES = 64 * 1024 * 1024;
+
+    /** What's in a file, see sniff. */
+    public enum Format {
+        // one value after the other, usually one per line.
+        JSONL,
+        // a single top-level array.
+        ARRAY,
+        // a single value that isn't an array, or something we don't understand.
+        OTHER
+    }
+
+    /** Open the file for reading. If it's gzipped, you get the decompressed bytes. */
+    public static InputStream open(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path));
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 != GZIP_MAGIC_1 || b2 != GZIP_MAGIC_2) return in;
+        // Decompress on another thread so the parser doesn't have to wait for it.
+        return new BackgroundInputStream(new GZIPInputStream(in, 64 * 1024), "gunzip");
+    }
+
+    /** True if the file starts like a gzip file. */
+    public static boolean isGzip(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+        }
+    }
+
+    /**
+     * Whether the file is JSONL, a single top-level array, or something else.
+     * The first few KB usually tell (see JsonNode.looksLikeJsonl). If the first line is
+     * longer than that, we skim the first value and check whether another one follows:
+     * JSONL whose records are long arrays starts with "[" too.
+     */
+    public static Format sniff(Path path) throws IOException {
+        byte[] head;
+        try (InputStream in = open(path)) {
+            head = in.readNBytes(JsonNode.SNIFF_CHARS);
+        }
+        String text = new String(head, StandardCharsets.UTF_8);
+        String[] lines = text.split("\n", -1);
+        if (head.length == JsonNode.SNIFF_CHARS) {
+            // there's more: the last line is probably cut short.
+            lines = Arrays.copyOf(lines, lines.length - 1);
+        }
+        if (JsonNode.looksLikeJsonl(lines)) return Format.JSONL;
+        Format document = (text.strip().startsWith("[") ? Format.ARRAY : Format.OTHER);
+        // a whole line that isn't a value by itself: the value spans lines.
+        if (!Arrays.stream(lines).allMatch(String::isBlank)) return document;
+        try (InputStream in = new LimitedInputStream(open(path), MAX_FIRST_VALUE_BYTES);
+             JsonParser parser = JsonNode.READER.createParser(in)) {
+            if (null == parser.nextToken()) return Format.OTHER;
+            parser.skipChildren();
+            if (null != parser.nextToken()) return Format.JSONL;
+            return document;
+        } catch (JsonProcessingException jpx) {
+            // the first value doesn't end in time (or isn't valid): a single document.
+            return document;
+        }
+    }
+
+    // Ends after that many bytes.
+    private static class LimitedInputStream extends FilterInputStream {
+        private long left;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.left = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (left <= 0) return -1;
+            int ret = super.read();
+            if (ret >= 0) left--;
+            return ret;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (left <= 0) return -1;
+            int ret = super.read(b, off, (int) Math.min(len, left));
+            if (ret > 0) left -= ret;
+            return ret;
+        }
+    }
+
+    /**
+     * Reads from the source on a background thread, a chunk at a time.
+     * At most a few chunks are read ahead, so memory use stays bounded.
+     */
+    static class BackgroundInputStream extends InputStream {
+        private static final int CHUNK_SIZE = 256 * 1024;
+        private static final int MAX_CHUNKS_AHEAD = 8;
+        // Marks the end of the data.
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_CHUNKS_AHEAD);
+        private final Thread thread;
+        private volatile IOException error = null;
+        private byte[] current = null;
+        private int pos = 0;
+        private boolean ended = false;
+
+        BackgroundInputStream(InputStream source, String threadName) {
+            thread = new Thread(() -> readAll(source), threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // runs on the background thread.
+        private void readAll(InputStream source) {
+            try (source) {
+                while (true) {
+                    byte[] chunk = source.readNBytes(CHUNK_SIZE);
+                    if (chunk.length == 0) break;
+                    chunks.put(chunk);
+                }
+            } catch (IOException iox) {
+                error = iox;
+            } catch (InterruptedException e) {
+                // closed before the end, nobody is listening anymore.
+                return;
+            }
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // closed, same as above.
+            }
+        }
+
+        // Make sure "current" has bytes left to read. Returns false at the end.
+        private boolean fill() throws IOException {
+            while (!ended && (null == current || pos >= current.length)) {
+                try {
+                    current = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for data");
+                }
+                pos = 0;
+                if (current == END) ended = true;
+            }
+            if (ended && null != error) throw error;
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return current[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int count = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, count);
+            pos += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // stops the background thread if it's still going.
+            thread.interrupt();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.example;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -10,6 +11,8 @@ import java.util.stream.Collectors;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import org.example.cursor.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -187,6 +190,15 @@ public abstract class JsonNode {
 
     protected boolean folded = false;
     protected boolean pinned = false;
+    // Goes up every time something is folded, unfolded, pinned, unpinned or moved, anywhere.
+    // Cached visibilities from an earlier epoch are out of date.
+    private static int foldEpoch = 0;
+    // Goes up every time the contents of a tree change anywhere: values, annotations,
+    // aggregates, or the order children are shown in. See getTreeEpoch.
+    private static int treeEpoch = 0;
+    // Whether a folded ancestor hides us (if we have no pins), valid while visibilityEpoch==foldEpoch.
+    private int visibilityEpoch = -1;
+    private boolean hiddenByAncestors;
     protected @NotNull String annotation = "";
     // A Cursor representing our ("this") position in the JSON tree.
     protected Cursor whereIAm;
@@ -197,6 +209,18 @@ public abstract class JsonNode {
     protected JsonNode parent;
     // The number of pinned entries in my children.
     protected int pinnedUnderMe;
+    // How many lines the Drawer needs to show us, for the layout described by
+    // cachedLinesWidth and cachedLinesContext (see Drawer.measureSubtree). -1 if unknown.
+    // Like pinnedUnderMe, changes below us must reset it (see invalidateLines).
+    int cachedLines = -1;
+    int cachedLinesWidth;
+    int cachedLinesContext;
+    // For containers, for the same layout as cachedLines: the line (counting from our
+    // first one) where each child starts, in iterateChildren(true) order, and then the line
+    // of our closing bracket. Hidden children take no lines. Null if we haven't measured any.
+    // Only the first linesKnown entries are filled in, the Drawer measures as far as it needs.
+    int @Nullable [] linesBefore;
+    int linesKnown;
     // This is meant for a list to be able to hold a JSON-like header
     // that has, say, the number of distinct values for each field.
     // Or the fraction of entries that have a given field.
@@ -207,50 +231,107 @@ public abstract class JsonNode {
     protected @Nullable JsonNode aggregate;
 
     public static JsonNode parse(Path path) throws IOException {
-        // Read the file
-        List<String> allLines = Files.readAllLines(path);
-        return JsonNode.parseLines(allLines.toArray(String[]::new));
+        // Stream the file straight into the parser, so we never hold
+        // the whole text in memory next to the parsed values.
+        try (InputStream in = FileInput.open(path)) {
+            return JsonNode.parseStream(in);
+        }
+    }
+
+    /**
+     * Read JSON or JSONL from a file. If lazy is set and the file is a top-level
+     * array or JSONL, we only index where each element is and parse them
+     * as they are needed (see MappedJsonList). Otherwise this is the same as parse(path).
+     * Gzipped files are always parsed the normal way.
+     **/
+    public static JsonNode parse(Path path, boolean lazy) throws IOException {
+        // compressed files can't be indexed in place.
+        if (!lazy || FileInput.isGzip(path)) return parse(path);
+        MappedJsonList mapped = MappedJsonList.open(path, READER);
+        if (null == mapped) return parse(path);
+        JsonNode ret = JsonNode.fromObject(mapped, null, new Cursor(), null);
+        if (mapped.isJsonl()) ret.setAnnotation("JSONL");
+        return ret;
+    }
+
+    /**
+     * Read JSON or JSONL from a stream, in a single pass.
+     * We read top-level values one after the other: if there's only one
+     * then it's a normal JSON document, otherwise it's JSONL.
+     * Big JSONL is parsed in parallel, see ChunkedParser.
+     **/
+    public static JsonNode parseStream(InputStream in) throws IOException {
+        return fromValues(ChunkedParser.readAll(in, READER));
+    }
+
+    // One value is a JSON document, more is JSONL.
+    private static JsonNode fromValues(List<Object> all) {
+        if (all.size()==1) {
+            // special case: a single value. Let's not say this is JSONL.
+            return JsonNode.fromObject(all.get(0), null, new Cursor(), null);
+        }
+        JsonNode ret = JsonNode.fromObject(storeCompactly(all), null, new Cursor(), null);
+        ret.setAnnotation("JSONL");
+        return ret;
+    }
+
+    /**
+     * If the list is many records with the same keys, store it by column (see ColumnarList).
+     * Otherwise return the list as-is.
+     */
+    static List<Object> storeCompactly(List<Object> list) {
+        ColumnarList columns = ColumnarList.tryCreate(list);
+        return (null == columns ? list : columns);
     }
 
     private static ObjectMapper getObjectMapper() {
         ObjectMapper ret = new ObjectMapper();
         ret.configure(JsonReadFeature.ALLOW_JAVA_COMMENTS.mappedFeature(), true);
         ret.configure(JsonReadFeature.ALLOW_YAML_COMMENTS.mappedFeature(), true); // for # comments
+        // JSON objects become ShapedMaps, so records with the same keys share them.
+        ret.registerModule(new SimpleModule().addDeserializer(Object.class, new ShapedObjectDeserializer()));
         return ret;
     }
 
-    // Try to read as either JSON or JSONL.
-    public static JsonNode parseLines(String[] lines) throws JsonProcessingException {
+    // ObjectReaders are immutable and thread-safe, so everyone can share this one.
+    static final ObjectReader READER = getObjectMapper().readerFor(Object.class);
+    // How much of the text we look at to decide whether it's JSONL (here, in ChunkedParser and in FileInput).
+    static final int SNIFF_CHARS = 4096;
 
-        // Is each line individually valid?
-        List<Object> all = new ArrayList<>();
-        int i=0;
+    /**
+     * Try to read as either JSON or JSONL, same as parseStream.
+     * ChunkedParser looks at the first lines to decide (see looksLikeJsonl): JSONL is parsed
+     * in parallel, anything else in a single pass. If it turns out not to be JSONL after all,
+     * only the part from where it stops being JSONL is parsed again.
+     **/
+    public static JsonNode parseLines(String[] lines) throws IOException {
+        return parseStream(new LinesInputStream(lines));
+    }
+
+    /**
+     * Look at the first few KB to guess whether this is JSONL.
+     * It is if every non-empty line in there holds a complete JSON value.
+     */
+    static boolean looksLikeJsonl(String[] lines) {
+        int seen = 0;
+        boolean sawValue = false;
         for (String l : lines) {
-            i++;
+            if (seen >= SNIFF_CHARS) break;
+            seen += l.length() + 1;
+            if (l.isEmpty()) continue;
             try {
-                if (l.isEmpty()) continue;
-                ObjectMapper parser = getObjectMapper();
-                Object parsed = parser.readValue(l, Object.class);
-                all.add(parsed);
+                READER.readValue(l);
+                sawValue = true;
             } catch (JsonProcessingException jpx) {
-                // Try the thing as a whole
-                String linesTogether = String.join("\n", lines);
-                return JsonNode.parseJson(linesTogether);
+                return false;
             }
         }
-        if (all.size()==1) {
-            // special case: a single line. Let's not say this is JSONL.
-            return JsonNode.fromObject(all.get(0), null, new Cursor(), null);
-        }
-        JsonNode ret = JsonNode.fromObject(all, null, new Cursor(), null);
-        ret.setAnnotation("JSONL");
-        return ret;
+        return sawValue;
     }
 
     public static JsonNode parseJson(String jsonLines) throws JsonProcessingException {
         // Parse it
-        ObjectMapper parser = getObjectMapper();
-        Object parsed = parser.readValue(jsonLines, Object.class);
+        Object parsed = READER.readValue(jsonLines);
         return JsonNode.fromObject(parsed, null, new Cursor(), null);
     }
 
@@ -258,15 +339,14 @@ public abstract class JsonNode {
         // Remove escapes
         jsonLines = Pattern.compile("\\\\").matcher(jsonLines).replaceAll("\\\\\\\\");
         // Parse
-        ObjectMapper parser = getObjectMapper();
-        Object parsed = parser.readValue(jsonLines, Object.class);
+        Object parsed = READER.readValue(jsonLines);
         return JsonNode.fromObject(parsed, null, new Cursor(), null);
     }
 
     /** Create a JsonState object to wrap the given JSON object. **/
     protected static JsonNode fromObject(Object json, JsonNode parent, Cursor toMe, JsonNode root) {
-        if (json instanceof LinkedHashMap) {
-            LinkedHashMap<String, Object> kv = (LinkedHashMap<String, Object>) json;
+        if (json instanceof Map) {
+            Map<String, Object> kv = (Map<String, Object>) json;
             return new JsonNodeMap(kv, parent, toMe, root);
         }
         if (json instanceof List) {
@@ -277,7 +357,7 @@ public abstract class JsonNode {
             ret.folded = true;
             return ret;
         }
-        return new JsonNodeValue(json, parent, toMe, root);
+        return JsonNodeValue.of(json, parent, toMe, root);
     }
 
     protected JsonNode(JsonNode parent, Cursor curToMe, JsonNode root) {
@@ -333,6 +413,8 @@ public abstract class JsonNode {
     public String getAnnotation() { return this.annotation; }
     public void setAnnotation(String a) {
         this.annotation = a;
+        invalidateLines();
+        treeChanged();
     }
 
     /**
@@ -343,22 +425,41 @@ public abstract class JsonNode {
         return folded;
     }
 
+    public void setFolded(boolean folded) {
+        if (this.folded == folded) return;
+        this.folded = folded;
+        foldEpoch++;
+        invalidateLines();
+    }
+
     /**
      * Whether this node should be shown in the UI.
      */
     public boolean isVisible() {
         if (hasPins()) return true;
         if (rootInfo.root == this) return true;
-        // if any of our ancestors is folded, then we're hidden since we have no pins.
-        // If any of our ancestors is pinned, then we're visible because folds higher up
-        // wouldn't have an effect.
-        JsonNode cur = getParent();
-        while (cur!=null) {
-            if (cur.getPinned()) return true;
-            if (cur.getFolded()) return false;
-            cur = cur.getParent();
+        return !isHiddenByAncestors();
+    }
+
+    // if any of our ancestors is folded, then we're hidden (unless we have pins).
+    // If any of our ancestors is pinned, then we're visible because folds higher up
+    // wouldn't have an effect.
+    // The answer is kept until the next fold or pin change, so checking a whole row of
+    // siblings only goes up the tree once.
+    private boolean isHiddenByAncestors() {
+        if (visibilityEpoch == foldEpoch) return hiddenByAncestors;
+        JsonNode dad = getParent();
+        boolean hidden;
+        if (null == dad || dad == this || dad.getPinned()) {
+            hidden = false;
+        } else if (dad.getFolded()) {
+            hidden = true;
+        } else {
+            hidden = dad.isHiddenByAncestors();
         }
-        return true;
+        hiddenByAncestors = hidden;
+        visibilityEpoch = foldEpoch;
+        return hidden;
     }
 
     public boolean getFoldedAtCursor() {
@@ -383,10 +484,10 @@ public abstract class JsonNode {
                             || (place instanceof JsonNodeValue) && (place.getValue() instanceof String))) {
                 changed=true;
             }
-            place.folded = folded;
+            place.setFolded(folded);
         }
         for (JsonNode sibling : atAnyCursor()) {
-            sibling.folded = folded;
+            sibling.setFolded(folded);
         }
         return changed;
     }
@@ -396,6 +497,15 @@ public abstract class JsonNode {
      * 2 = Me and my children are unfolded. Their children are folded.
      **/
     public void setFoldedLevels(int levelCount) {
+        foldEpoch++;
+        innerSetFoldedLevels(levelCount);
+        // the descendants were reset as we went, now for the ancestors.
+        invalidateLines();
+    }
+
+    private void innerSetFoldedLevels(int levelCount) {
+        cachedLines = -1;
+        linesBefore = null;
         if (levelCount<1) {
             this.folded = true;
             return;
@@ -404,7 +514,7 @@ public abstract class JsonNode {
         var it = iterateChildren(true);
         while (it!=null) {
             JsonNode kid = it.get();
-            kid.setFoldedLevels(levelCount-1);
+            kid.innerSetFoldedLevels(levelCount-1);
             it = it.next();
         }
     }
@@ -417,12 +527,15 @@ public abstract class JsonNode {
         if (this.pinned==newPinned) return;
         // set the new state
         this.pinned = newPinned;
+        foldEpoch++;
         // update the counters at & above
         int delta = -1;
         if (this.pinned) delta = 1;
         JsonNode cur = this;
         while (cur != null) {
             cur.pinnedUnderMe += delta;
+            cur.cachedLines = -1;
+            cur.linesBefore = null;
             JsonNode dad = cur.getParent();
             if (dad==cur) break;
             cur = dad;
@@ -465,6 +578,98 @@ public abstract class JsonNode {
         }
         this.aggregate = aggregate;
         this.aggregateComment = aggregateComment;
+        invalidateLines();
+        treeChanged();
+    }
+
+    /**
+     * Changes whenever the contents of a tree change. Things computed from a tree
+     * (like search results) are still good as long as this stays the same.
+     */
+    public static int getTreeEpoch() {
+        return treeEpoch;
+    }
+
+    // We changed: bump the epoch, and if we're in one of the root list's records,
+    // tell its text index that this record isn't what it was when loaded.
+    void treeChanged() {
+        treeEpoch++;
+        if (isRoot()) return;
+        JsonNode record = this;
+        while (!record.parent.isRoot()) record = record.parent;
+        if (record.parent instanceof JsonNodeList && record.whereIAm.getStep() instanceof DescentIndex) {
+            ((JsonNodeList) record.parent).recordChanged(((DescentIndex) record.whereIAm.getStep()).get());
+        }
+    }
+
+    /**
+     * Something changed how we're drawn (folding, children, ...): forget the line
+     * counts cached here and in our ancestors, since theirs include ours.
+     */
+    void invalidateLines() {
+        JsonNode cur = this;
+        while (cur != null) {
+            cur.cachedLines = -1;
+            cur.linesBefore = null;
+            JsonNode dad = cur.getParent();
+            if (dad==cur) break;
+            cur = dad;
+        }
+    }
+
+    /** True if cachedLines and linesBefore are valid for this layout. */
+    boolean hasCachedLines(int width, int context) {
+        return cachedLines >= 0 && cachedLinesWidth == width && cachedLinesContext == context;
+    }
+
+    /**
+     * The child at this position when iterating with iterateChildren(true): 0 is the
+     * aggregate if there's one. Null if there's no such child.
+     */
+    @Nullable JsonNode childAtPosition(int position) {
+        return null;
+    }
+
+    /** How many children we have, not counting the aggregate. */
+    public int childCount() {
+        return 0;
+    }
+
+    /** The position of this child of ours in iterateChildren(true), or -1. */
+    int positionOf(JsonNode child) {
+        return -1;
+    }
+
+    /**
+     * Negative if a is shown before b, positive if after, 0 if it's the same node.
+     * Parents come before their children, and children are in the order they're
+     * shown in (so, sorted if their parent is). Both must be in the same tree.
+     */
+    public static int compareDisplayOrder(JsonNode a, JsonNode b) {
+        int depthA = a.whereIAm.getDepth();
+        int depthB = b.whereIAm.getDepth();
+        JsonNode upA = a;
+        JsonNode upB = b;
+        for (int d = depthA; d > depthB; d--) upA = upA.parent;
+        for (int d = depthB; d > depthA; d--) upB = upB.parent;
+        // one is the other's ancestor (or they're the same)
+        if (upA == upB) return Integer.compare(depthA, depthB);
+        while (upA.parent != upB.parent) {
+            upA = upA.parent;
+            upB = upB.parent;
+        }
+        JsonNode dad = upA.parent;
+        if (null == dad) return 0;
+        return Integer.compare(dad.positionOf(upA), dad.positionOf(upB));
+    }
+
+    /** Like iterateChildren(true), but starting at that position. */
+    @Nullable JsonNodeIterator<?> iterateChildrenFrom(int position) {
+        JsonNodeIterator<?> it = iterateChildren(true);
+        for (int i = 0; i < position && it != null; i++) {
+            it = it.next();
+        }
+        return it;
     }
 
     // Mark this node and all descendants as "synthetic" (marked as a comment when drawn)
@@ -716,6 +921,8 @@ public abstract class JsonNode {
      * To make it root, pass null for the parent and a new cursor.
      */
     public void reparent(JsonNode newParent, Cursor cursorToMe) {
+        foldEpoch++;
+        treeChanged();
         if (null==newParent) {
             this.rootInfo = new RootInfo(this);
             this.root = this.rootInfo.root;
@@ -7,6 +7,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
 public class JsonNodeList extends JsonNode {
 
@@ -76,7 +78,7 @@ public class JsonNodeList extends JsonNode {
             if (displayIndex==-1) {
                 return dad.aggregate;
             }
-            return dad.get(dad.displayOrder[displayIndex]);
+            return dad.get(dad.indexAt(displayIndex));
         }
 
         @Override
@@ -111,6 +113,11 @@ public class JsonNodeList extends JsonNode {
     // instead maintain a "display order" of who's displayed when.
     // Everything else that talks about an "index" uses the original index.
 
+    // Lists this big are sorted a screenful first, see pendingOrder.
+    public static final int LAZY_SORT_MIN = 50_000;
+    // How many elements that first part has.
+    public static final int LAZY_SORT_HEAD = 1000;
+
     List<Object> values;
     private JsonNode[] children;
     // display index -> list index
@@ -118,8 +125,22 @@ public class JsonNodeList extends JsonNode {
     // list index -> display index
     private int[] whereIsDiplayed;
     private @Nullable Sorter sortOrder = null;
-
-    /** We assume that the passed values list is never modified. **/
+    // For big lists, sort only puts the first few elements in place (enough for the screen)
+    // and the full order is worked out in the background. Until it's in, only the first
+    // sortedHead positions of displayOrder are right: indexAt and displayedAt wait for the
+    // rest when asked about the others.
+    private @Nullable CompletableFuture<int[]> pendingOrder = null;
+    private int sortedHead = 0;
+    // What the background sort is sorting with, so unsort can stop it.
+    private @Nullable SortKeys pendingKeys = null;
+    // appendValues calls in a row, with no other change to the tree in between:
+    // the tree epoch before the first one and after the last one (see onlyAppendedSince).
+    private int appendsFromEpoch = -1;
+    private int appendsToEpoch = -1;
+    // Helps searches skip the elements that can't match, see startIndexing.
+    private @Nullable TrigramIndex textIndex = null;
+
+    /** We assume that the passed values list is never modified, except by appendValues. **/
     protected JsonNodeList(List<Object> values, JsonNode parent, Cursor curToMe, JsonNode root) {
         super(parent, curToMe, root);
         this.values = values;
@@ -160,9 +181,52 @@ public class JsonNodeList extends JsonNode {
 
 
     public int[] getIndexesInOrder() {
+        finishSort();
         return displayOrder.clone();
     }
 
+    // The index of the element shown at that display index.
+    private int indexAt(int displayIndex) {
+        if (null != pendingOrder && (displayIndex >= sortedHead || pendingOrder.isDone())) finishSort();
+        return displayOrder[displayIndex];
+    }
+
+    // The display index of the element at that index.
+    private int displayedAt(int index) {
+        if (null != pendingOrder && (whereIsDiplayed[index] >= sortedHead || pendingOrder.isDone())) finishSort();
+        return whereIsDiplayed[index];
+    }
+
+    // Stop the background sort, if any. Only the first sortedHead positions are sorted then.
+    private void cancelSort() {
+        if (null != pendingKeys) pendingKeys.stop();
+        pendingOrder = null;
+        pendingKeys = null;
+    }
+
+    // Work out the full order in the background, starting from that one.
+    private void startSort(SortKeys keys, int[] order) {
+        pendingKeys = keys;
+        pendingOrder = CompletableFuture.supplyAsync(() -> keys.sort(order));
+    }
+
+    // Wait for the background sort, if any, and use its order.
+    private void finishSort() {
+        if (null == pendingOrder) return;
+        int[] order = pendingOrder.join();
+        pendingOrder = null;
+        pendingKeys = null;
+        setDisplayOrder(order);
+    }
+
+    private void setDisplayOrder(int[] order) {
+        displayOrder = order;
+        whereIsDiplayed = new int[order.length];
+        for (int pos = 0; pos < order.length; pos++) {
+            whereIsDiplayed[order[pos]] = pos;
+        }
+    }
+
     public JsonNode get(int index) {
         if (index==-1) {
             return this.aggregate;
@@ -174,6 +238,55 @@ public class JsonNodeList extends JsonNode {
 
     }
 
+    /**
+     * Once we're done appending: if the elements are records with the same keys,
+     * keep them by column to save memory (see ColumnarList).
+     */
+    public void storeCompactly() {
+        if (values instanceof ColumnarList) return;
+        values = JsonNode.storeCompactly(values);
+    }
+
+    /**
+     * Start indexing the text in our elements in the background, so searches can
+     * skip the ones that can't match (see TrigramIndex). Elements added later aren't
+     * indexed, searches always look at them.
+     */
+    public void startIndexing() {
+        if (null != textIndex) textIndex.stop();
+        // appendValues grows plain lists, so the index gets its own copy.
+        List<Object> snapshot = (values instanceof ArrayList ? new ArrayList<>(values) : values);
+        textIndex = TrigramIndex.start(snapshot);
+    }
+
+    /** The index of our elements' text, if startIndexing was called. It may not be ready yet. */
+    public @Nullable TrigramIndex getTextIndex() {
+        return textIndex;
+    }
+
+    // Something in the element at that index changed.
+    void recordChanged(int index) {
+        if (null != textIndex) textIndex.recordChanged(index);
+    }
+
+    /**
+     * The element at that index: its node if we made one already, otherwise its value
+     * as it was parsed. For looking at many elements without making nodes for all of them.
+     */
+    public Object peek(int index) {
+        JsonNode kid = children[index];
+        return (null != kid ? kid : values.get(index));
+    }
+
+    // For tests: how many of our elements we made a node for so far.
+    int nodesMade() {
+        int count = 0;
+        for (JsonNode kid : children) {
+            if (null != kid) count++;
+        }
+        return count;
+    }
+
     @Override
     public Object getValue() {
         List<Object> ret = new ArrayList(values);
@@ -193,13 +306,39 @@ public class JsonNodeList extends JsonNode {
         if (null!=aggregate) {
             return aggregate;
         }
-        return get(displayOrder[0]);
+        return get(indexAt(0));
     }
 
     @Override
     public JsonNode lastChild() {
         if (values.isEmpty()) return null;
-        return get(displayOrder[displayOrder.length-1]);
+        return get(indexAt(displayOrder.length-1));
+    }
+
+    @Override
+    @Nullable JsonNode childAtPosition(int position) {
+        if (null != aggregate) {
+            if (position == 0) return aggregate;
+            position--;
+        }
+        if (position < 0 || position >= displayOrder.length) return null;
+        return get(indexAt(position));
+    }
+
+    @Override
+    int positionOf(JsonNode child) {
+        if (child == aggregate) return 0;
+        if (!(child.whereIAm.getStep() instanceof DescentIndex)) return -1;
+        int index = ((DescentIndex) child.whereIAm.getStep()).get();
+        if (index < 0 || index >= whereIsDiplayed.length) return -1;
+        return displayedAt(index) + (null == aggregate ? 0 : 1);
+    }
+
+    @Override
+    @Nullable JsonNodeIterator<?> iterateChildrenFrom(int position) {
+        int displayIndex = position - (null == aggregate ? 0 : 1);
+        if (displayIndex >= childCount()) return null;
+        return new JsonNodeListIterator(this, displayIndex, true);
     }
 
     public int childCount() {
@@ -218,19 +357,19 @@ public class JsonNodeList extends JsonNode {
             int index = di.get();
             if (index<0) {
                 // special case: aggregate data. For those we don't change the order.
-                return get(displayOrder[0]);
+                return get(indexAt(0));
             }
             // convert from the index in the original order (what's in the cursor)
             // to the index in display order (the order we want to iterate in)
-            int displayed = whereIsDiplayed[index];
+            int displayed = displayedAt(index);
             if (displayed+1>=displayOrder.length) {
                 // out of bounds
                 return null;
             }
-            return get(displayOrder[displayed+1]);
+            return get(indexAt(displayed+1));
         } else if (step instanceof DescentKey) {
             // ok that was the aggregate, moving on to index 0.
-            return get(displayOrder[0]);
+            return get(indexAt(0));
         }
         throw new RuntimeException("invalid cursor");
     }
@@ -251,7 +390,7 @@ public class JsonNodeList extends JsonNode {
             }
             // convert from the index in the original order (what's in the cursor)
             // to the index in display order (the order we want to iterate in)
-            int displayed = whereIsDiplayed[index];
+            int displayed = displayedAt(index);
             if (displayed<=0) {
                 if (null!=aggregate) {
                     return get(-1);
@@ -259,7 +398,7 @@ public class JsonNodeList extends JsonNode {
                 // out of bounds
                 return null;
             }
-            return get(displayOrder[displayed-1]);
+            return get(indexAt(displayed-1));
         } else if (step instanceof DescentKey) {
             // ok that was the aggregate, we're done then.
             return null;
@@ -273,27 +412,143 @@ public class JsonNodeList extends JsonNode {
             unsort();
             return;
         }
-        SorterList<Object> sl = new SorterList<>(sorter, values);
-        displayOrder = Arrays.stream(displayOrder).boxed().sorted(sl).mapToInt(i->i).toArray();
-        if (whereIsDiplayed==displayOrder) {
-            whereIsDiplayed = new int[displayOrder.length];
-        }
-        for (int pos=0; pos<displayOrder.length; pos++) {
-            int index = displayOrder[pos];
-            whereIsDiplayed[index] = pos;
+        // sort what's shown, as it's shown. Never mind the sort in progress, if any.
+        cancelSort();
+        SortKeys keys = sorter.keysOf(values);
+        int[] before = displayOrder;
+        if (before.length < LAZY_SORT_MIN) {
+            setDisplayOrder(keys.sort(before));
+        } else {
+            // The first screenful now, the rest in the background.
+            int[] head = keys.head(before, LAZY_SORT_HEAD);
+            BitSet inHead = new BitSet(before.length);
+            for (int index : head) inHead.set(index);
+            int[] order = Arrays.copyOf(head, before.length);
+            int pos = head.length;
+            for (int index : before) {
+                if (!inHead.get(index)) order[pos++] = index;
+            }
+            setDisplayOrder(order);
+            sortedHead = head.length;
+            startSort(keys, before);
         }
         sorter.pack();
         this.sortOrder = sorter;
+        invalidateLines();
+        treeChanged();
+    }
+
+    /**
+     * Add values at the end of the list, for example as they are loaded.
+     * The existing children, and cursors pointing to them, are unchanged.
+     * If the list is sorted, the new values are merged in at their sorted position.
+     **/
+    public void appendValues(List<Object> more) {
+        if (more.isEmpty()) return;
+        // if the sort is done, use it. Otherwise we don't wait, see appendWhileSorting.
+        if (null != pendingOrder && pendingOrder.isDone()) finishSort();
+        // unsorted, the new values go at the end: the lines before them don't move.
+        int @Nullable [] keepLines = (null == sortOrder ? linesBefore : null);
+        invalidateLines();
+        linesBefore = keepLines;
+        int epoch = getTreeEpoch();
+        treeChanged();
+        if (epoch != appendsToEpoch) appendsFromEpoch = epoch;
+        appendsToEpoch = getTreeEpoch();
+        int oldSize = values.size();
+        // columnar lists can't grow, go back to a plain list.
+        if (values instanceof ColumnarList) values = new ArrayList<>(values);
+        values.addAll(more);
+        int newSize = values.size();
+        children = Arrays.copyOf(children, newSize);
+        if (null == sortOrder) {
+            boolean identity = (whereIsDiplayed == displayOrder);
+            displayOrder = Arrays.copyOf(displayOrder, newSize);
+            for (int i = oldSize; i < newSize; i++) {
+                displayOrder[i] = i;
+            }
+            if (identity) {
+                whereIsDiplayed = displayOrder;
+            } else {
+                whereIsDiplayed = Arrays.copyOf(whereIsDiplayed, newSize);
+                for (int i = oldSize; i < newSize; i++) {
+                    whereIsDiplayed[i] = i;
+                }
+            }
+            return;
+        }
+        // The old values are already in order: sort only the new ones, then merge.
+        // On ties the old values go first, same as a stable sort of the whole list.
+        SortKeys keys = sortOrder.keysOf(values);
+        int[] added = keys.sort(IntStream.range(oldSize, newSize).toArray());
+        if (null != pendingOrder) {
+            appendWhileSorting(keys, added, oldSize);
+            sortOrder.pack();
+            return;
+        }
+        int[] merged = new int[newSize];
+        int o = 0, a = 0, pos = 0;
+        while (o < oldSize && a < added.length) {
+            if (keys.compare(displayOrder[o], added[a]) <= 0) {
+                merged[pos++] = displayOrder[o++];
+            } else {
+                merged[pos++] = added[a++];
+            }
+        }
+        while (o < oldSize) merged[pos++] = displayOrder[o++];
+        while (a < added.length) merged[pos++] = added[a++];
+        displayOrder = merged;
+        whereIsDiplayed = new int[newSize];
+        for (pos = 0; pos < newSize; pos++) {
+            whereIsDiplayed[displayOrder[pos]] = pos;
+        }
+        sortOrder.pack();
+    }
+
+    // Only the head of the old values is sorted, the rest is being sorted in the background.
+    // The new values that go before the end of the head are merged into it, the others go
+    // after the rest, and we sort again in the background with the new values.
+    private void appendWhileSorting(SortKeys keys, int[] added, int oldSize) {
+        cancelSort();
+        int newSize = oldSize + added.length;
+        int last = displayOrder[sortedHead - 1];
+        int[] merged = new int[newSize];
+        int o = 0, a = 0, pos = 0;
+        while (o < sortedHead || (a < added.length && keys.compare(last, added[a]) > 0)) {
+            if (o < sortedHead && (a == added.length || keys.compare(displayOrder[o], added[a]) <= 0
+                    || keys.compare(last, added[a]) <= 0)) {
+                merged[pos++] = displayOrder[o++];
+            } else {
+                merged[pos++] = added[a++];
+            }
+        }
+        sortedHead = pos;
+        while (o < oldSize) merged[pos++] = displayOrder[o++];
+        while (a < added.length) merged[pos++] = added[a++];
+        setDisplayOrder(merged);
+        startSort(keys, merged.clone());
+    }
+
+    /**
+     * True if since that tree epoch (see getTreeEpoch), all that changed in the tree
+     * is that appendValues added values at our end.
+     */
+    public boolean onlyAppendedSince(int epoch) {
+        return getTreeEpoch() == appendsToEpoch && epoch >= appendsFromEpoch;
     }
 
     @Override
     public void unsort() {
+        // never mind the sort in progress, if any.
+        cancelSort();
         for (int i = 0; i< displayOrder.length; i++) {
             displayOrder[i] = i;
         }
         // when index = display order, these two arrays are the same.
         this.whereIsDiplayed = displayOrder;
         this.sortOrder = null;
+        invalidateLines();
+        treeChanged();
     }
 
     @Override
@@ -326,6 +581,9 @@ public class JsonNodeList extends JsonNode {
         newKid.rootInfo = rootInfo;
         this.pinnedUnderMe += newKid.pinnedUnderMe;
         this.children[index] = newKid;
+        recordChanged(index);
+        invalidateLines();
+        treeChanged();
         return newKid;
     }
 
@@ -7,7 +7,6 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class JsonNodeMap extends JsonNode {
 
@@ -99,13 +98,18 @@ public class JsonNodeMap extends JsonNode {
         }
     }
 
-    private final LinkedHashMap<String, Object> kv;
-    private final HashMap<String, JsonNode> children;
+    // The values. Usually a ShapedMap, straight from the parser.
+    private final Map<String, Object> kv;
+    // The keys of kv, and where each one is. Maps with the same keys share it.
+    private final @NotNull KeyShape shape;
+    // The child nodes we've made so far, by their key's position in the shape.
+    private final JsonNode[] children;
 
-    // The keys, in display order
+    // The keys, in display order. When unsorted, this is shared with the shape: don't modify.
     private @NotNull String[] displayOrder;
-    // For each key, where it stands in the display order.
-    private @NotNull Map<String, Integer> whereIsDiplayed;
+    // For each key (by position in the shape), where it stands in the display order.
+    // When unsorted, this is shared with the shape: don't modify.
+    private @NotNull int[] whereIsDiplayed;
 
     private @Nullable Sorter sortOrder = null;
 
@@ -113,39 +117,34 @@ public class JsonNodeMap extends JsonNode {
     /**
      * Normal constructor, from the result of parsing JSON.
      */
-    protected JsonNodeMap(LinkedHashMap<String, Object> kv, JsonNode parent, Cursor curToMe, JsonNode root) {
+    protected JsonNodeMap(Map<String, Object> kv, JsonNode parent, Cursor curToMe, JsonNode root) {
         super(parent, curToMe, root);
         this.kv = kv;
-        this.children = new HashMap<>();
-        this.displayOrder = kv.keySet().toArray(new String[0]);
-        this.whereIsDiplayed = new HashMap<>();
-        for (int i = 0; i < displayOrder.length; i++) {
-            whereIsDiplayed.put(displayOrder[i], i);
+        if (kv instanceof ShapedMap) {
+            this.shape = ((ShapedMap) kv).getShape();
+        } else {
+            this.shape = KeyShape.intern(kv.keySet().toArray(new String[0]));
         }
-        sortOrder = null;
+        this.children = new JsonNode[shape.size()];
+        resetDisplayOrder();
     }
 
     // See the builder
     private JsonNodeMap(LinkedHashMap<String, JsonNodeBuilder> newKids, JsonNode parent, Cursor curToMe, JsonNode root, boolean _ignored) {
         super(parent, curToMe, root);
 
-        this.kv = new LinkedHashMap<>();
-        for (String key : newKids.keySet()) {
-            kv.put(key, null);
-        }
-        this.children = new HashMap<String, JsonNode>();
+        this.shape = KeyShape.intern(newKids.keySet().toArray(new String[0]));
+        this.children = new JsonNode[shape.size()];
+        Object[] values = new Object[shape.size()];
+        int i = 0;
         for (Map.Entry<String, JsonNodeBuilder> e : newKids.entrySet()) {
             JsonNode child = e.getValue().build(this, this.asCursor().enterKey(e.getKey()));
-            this.children.put(e.getKey(), child);
-            kv.put(e.getKey(), child.getValue());
+            this.children[i] = child;
+            values[i] = child.getValue();
+            i++;
         }
-
-        this.displayOrder = this.children.keySet().toArray(new String[0]);
-        this.whereIsDiplayed = new HashMap<>();
-        for (int i = 0; i < displayOrder.length; i++) {
-            whereIsDiplayed.put(displayOrder[i], i);
-        }
-        sortOrder = null;
+        this.kv = new ShapedMap(shape, values);
+        resetDisplayOrder();
     }
 
     public Collection<String> getKeysInOrder() {
@@ -154,7 +153,7 @@ public class JsonNodeMap extends JsonNode {
 
     @Override
     public Object getValue() {
-        return kv.clone();
+        return ShapedMap.copyOf(kv);
     }
 
     public Object getValue(String key) {
@@ -162,24 +161,62 @@ public class JsonNodeMap extends JsonNode {
     }
 
     public JsonNode getChild(String key) {
-        if (this.children.containsKey(key)) {
-            return this.children.get(key);
-        } else {
-            if (!kv.containsKey(key))
-                throw new NoSuchElementException("No '" + key + "' child for " + whereIAm.toString());
-            Object childJson = kv.get(key);
-            JsonNode child = JsonNode.fromObject(childJson, this, whereIAm.enterKey(key), root);
-            this.children.put(key, child);
-            return child;
+        int index = shape.indexOf(key);
+        if (index < 0)
+            throw new NoSuchElementException("No '" + key + "' child for " + whereIAm.toString());
+        return getChildAt(index);
+    }
+
+    /** Our keys. Maps with the same keys share it, so where a key is can be looked up once for all of them. */
+    public @NotNull KeyShape getShape() {
+        return shape;
+    }
+
+    /** The child for the key at this position in getShape(). */
+    public JsonNode getChildAt(int index) {
+        if (null == this.children[index]) {
+            String key = shape.key(index);
+            Object childJson = (kv instanceof ShapedMap ? ((ShapedMap) kv).getAt(index) : kv.get(key));
+            this.children[index] = JsonNode.fromObject(childJson, this, whereIAm.enterKey(key), root);
+        }
+        return this.children[index];
+    }
+
+    @Override
+    @Nullable JsonNode childAtPosition(int position) {
+        if (null != aggregate) {
+            if (position == 0) return aggregate;
+            position--;
         }
+        if (position < 0 || position >= displayOrder.length) return null;
+        return getChild(displayOrder[position]);
+    }
+
+    @Override
+    int positionOf(JsonNode child) {
+        int offset = (null == aggregate ? 0 : 1);
+        if (child == aggregate) return 0;
+        if (!(child.whereIAm.getStep() instanceof DescentKey)) return -1;
+        int index = shape.indexOf(((DescentKey) child.whereIAm.getStep()).get());
+        if (index < 0) return -1;
+        return whereIsDiplayed[index] + offset;
+    }
+
+    @Override
+    @Nullable JsonNodeIterator<?> iterateChildrenFrom(int position) {
+        int displayIndex = position - (null == aggregate ? 0 : 1);
+        if (displayIndex >= childCount()) return null;
+        return new JsonNodeMapIterator(this, displayIndex);
     }
 
     public int childCount() {
-        return kv.size();
+        return shape.size();
     }
 
     public void setChildAggregateComment(String key, String comment) {
-        getChild(key).aggregateComment = comment;
+        JsonNode child = getChild(key);
+        child.aggregateComment = comment;
+        child.invalidateLines();
     }
 
     /**
@@ -200,8 +237,9 @@ public class JsonNodeMap extends JsonNode {
      * Whether this child is folded
      **/
     public boolean getChildFolded(String key) {
-        if (!this.children.containsKey(key)) return false;
-        return getChild(key).getFolded();
+        int index = shape.indexOf(key);
+        if (index < 0 || null == this.children[index]) return false;
+        return this.children[index].getFolded();
     }
 
     @Override
@@ -228,11 +266,11 @@ public class JsonNodeMap extends JsonNode {
         DescentStep step = childCursor.getStep();
         // if we found ourselves, then this must be a descentKey
         if (!(step instanceof DescentKey)) return null;
-        String key = ((DescentKey) step).get();
-        if (!whereIsDiplayed.containsKey(key)) {
+        int index = shape.indexOf(((DescentKey) step).get());
+        if (index < 0) {
             return null;
         }
-        int displayIndex = whereIsDiplayed.get(key);
+        int displayIndex = whereIsDiplayed[index];
         if (displayIndex + 1 >= displayOrder.length) {
             // we're at the end
             JsonNode parent = childCursor.getData().getParent();
@@ -248,11 +286,11 @@ public class JsonNodeMap extends JsonNode {
         DescentStep step = childCursor.getStep();
         // if we found ourselves, then this must be a descentKey
         if (!(step instanceof DescentKey)) return null;
-        String key = ((DescentKey) step).get();
-        if (!whereIsDiplayed.containsKey(key)) {
+        int index = shape.indexOf(((DescentKey) step).get());
+        if (index < 0) {
             return null;
         }
-        int displayIndex = whereIsDiplayed.get(key);
+        int displayIndex = whereIsDiplayed[index];
         if (displayIndex == 0) {
             // we're at the beginning already
             return null;
@@ -267,39 +305,42 @@ public class JsonNodeMap extends JsonNode {
             return;
         }
 
-        if (sorter.getSortkeys()) {
-            ArrayList<String> keys = new ArrayList<String>(getKeysInOrder());
-            keys.sort(sorter);
-            this.displayOrder = keys.toArray(new String[0]);
-        } else {
-            List<Object> values = kv.values().stream().collect(Collectors.toList());
-            List<String> keys = kv.keySet().stream().collect(Collectors.toList());
-            List<Integer> indices = new ArrayList<>();
-            for (int i = 0; i < values.size(); i++) {
-                indices.add(i);
-            }
-            SorterList<Object> sl = new SorterList<>(sorter, values);
-            int[] sortedIndices = indices.stream().sorted(sl).mapToInt(i -> i).toArray();
-            this.displayOrder = new String[indices.size()];
-            for (int i : indices) {
-                displayOrder[i] = keys.get(sortedIndices[i]);
-            }
+        // Sorting by keys starts from how they're shown, by values from the map's order.
+        List<String> keys = new ArrayList<>(sorter.getSortkeys() ? getKeysInOrder() : kv.keySet());
+        List<Object> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(kv.get(key));
+        }
+        int[] order = new int[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        order = sorter.keysOf(values, keys).sort(order);
+        this.displayOrder = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            displayOrder[i] = keys.get(order[i]);
         }
-        this.whereIsDiplayed = new HashMap<>();
+        this.whereIsDiplayed = new int[displayOrder.length];
         for (int i = 0; i < displayOrder.length; i++) {
-            whereIsDiplayed.put(displayOrder[i], i);
+            whereIsDiplayed[shape.indexOf(displayOrder[i])] = i;
         }
         sorter.pack();
         sortOrder = sorter;
+        invalidateLines();
+        treeChanged();
     }
 
     @Override
     public void unsort() {
-        this.displayOrder = kv.keySet().toArray(new String[0]);
-        this.whereIsDiplayed = new HashMap<>();
-        for (int i = 0; i < displayOrder.length; i++) {
-            whereIsDiplayed.put(displayOrder[i], i);
-        }
+        resetDisplayOrder();
+        invalidateLines();
+        treeChanged();
+    }
+
+    private void resetDisplayOrder() {
+        // when unsorted, we display the keys in the shape's order.
+        this.displayOrder = shape.keys();
+        this.whereIsDiplayed = shape.identity();
         sortOrder = null;
     }
 
@@ -335,7 +376,9 @@ public class JsonNodeMap extends JsonNode {
         JsonNode newKid = kid.build(this, whereIAm.enterKey(key));
         newKid.rootInfo = rootInfo;
         this.pinnedUnderMe += newKid.pinnedUnderMe;
-        this.children.put(key, newKid);
+        this.children[shape.indexOf(key)] = newKid;
+        invalidateLines();
+        treeChanged();
         return newKid;
     }
 
@@ -344,14 +387,15 @@ public class JsonNodeMap extends JsonNode {
         super.checkInvariants();
         int pos = 0;
         for (String key: displayOrder) {
-            if (whereIsDiplayed.get(key) != pos) {
+            if (whereIsDiplayed[shape.indexOf(key)] != pos) {
                 throw new InvariantException("displayOrder inconsistent with whereIsDisplayed for map at " + asCursor().toString());
             }
             pos++;
         }
-        for (String key: children.keySet()) {
-            if (this.children.get(key)==null) continue;
-            Cursor toChild = children.get(key).whereIAm;
+        for (int i=0; i<this.children.length; i++) {
+            if (this.children[i]==null) continue;
+            String key = shape.key(i);
+            Cursor toChild = children[i].whereIAm;
             DescentStep lastStep = toChild.getStep();
             if (lastStep instanceof DescentKey) {
                 String hisKey = ((DescentKey)lastStep).get();
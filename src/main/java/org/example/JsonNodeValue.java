@@ -7,7 +7,8 @@ import org.jetbrains.annotations.Nullable;
 import java.util.Date;
 
 public class JsonNodeValue<T> extends JsonNode {
-    protected T value;
+    // Null in the subclasses that keep a primitive instead: use getValue().
+    private final T value;
 
     // Use the builder to build complicated structures from the bottom up,
     // where you don't know in advance who the parent will be.
@@ -34,7 +35,8 @@ public class JsonNodeValue<T> extends JsonNode {
         public JsonNodeValue<T> build(JsonNode parent, Cursor curToMe) {
             JsonNode root = null;
             if (null!=parent) root = parent.rootInfo.root;
-            JsonNodeValue<T> ret = new JsonNodeValue<>(value, parent, curToMe, root);
+            @SuppressWarnings("unchecked")
+            JsonNodeValue<T> ret = (JsonNodeValue<T>) JsonNodeValue.of(value, parent, curToMe, root);
             if (pinned) ret.setPinned(pinned);
             if (folded) ret.folded = folded;
             return ret;
@@ -42,73 +44,190 @@ public class JsonNodeValue<T> extends JsonNode {
 
     }
 
+    /**
+     * A whole number (Integer or Long), kept as a primitive instead of the boxed value.
+     * getValue() gives back the same type that was parsed.
+     */
+    public static class OfLong extends JsonNodeValue<Number> {
+        private final long primitive;
+        // whether the parser gave us an Integer, rather than a Long.
+        private final boolean isInt;
+
+        protected OfLong(Number value, JsonNode parent, Cursor curToMe, JsonNode root) {
+            super(parent, curToMe, root, value);
+            this.primitive = value.longValue();
+            this.isInt = (value instanceof Integer);
+        }
+
+        public long longValue() {
+            return primitive;
+        }
+
+        @Override
+        public Number getValue() {
+            if (isInt) return (int) primitive;
+            return primitive;
+        }
+
+        @Override
+        public boolean isNumber() {
+            return true;
+        }
+
+        @Override
+        public double doubleValue() {
+            return primitive;
+        }
+    }
+
+    /** A floating-point number, kept as a primitive instead of the boxed value. */
+    public static class OfDouble extends JsonNodeValue<Double> {
+        private final double primitive;
+
+        protected OfDouble(Double value, JsonNode parent, Cursor curToMe, JsonNode root) {
+            super(parent, curToMe, root, value);
+            this.primitive = value;
+        }
+
+        @Override
+        public Double getValue() {
+            return primitive;
+        }
+
+        @Override
+        public boolean isNumber() {
+            return true;
+        }
+
+        @Override
+        public double doubleValue() {
+            return primitive;
+        }
+    }
+
+    /** true or false, kept as a primitive instead of the boxed value. */
+    public static class OfBoolean extends JsonNodeValue<Boolean> {
+        private final boolean primitive;
+
+        protected OfBoolean(Boolean value, JsonNode parent, Cursor curToMe, JsonNode root) {
+            super(parent, curToMe, root, value);
+            this.primitive = value;
+        }
+
+        public boolean booleanValue() {
+            return primitive;
+        }
+
+        @Override
+        public Boolean getValue() {
+            // Boolean.valueOf doesn't allocate.
+            return primitive;
+        }
+    }
+
     protected JsonNodeValue(T value, JsonNode parent, Cursor curToMe, JsonNode root) {
         super(parent, curToMe, root);
         this.value = value;
-        autoAnnotate();
+        autoAnnotate(value);
+    }
+
+    // For the subclasses that keep the value as a primitive: we only look at the boxed
+    // value to annotate it, the field stays null.
+    private JsonNodeValue(JsonNode parent, Cursor curToMe, JsonNode root, Object boxed) {
+        super(parent, curToMe, root);
+        this.value = null;
+        autoAnnotate(boxed);
+    }
+
+    /** The node for this value: numbers and booleans get one of the primitive variants. */
+    public static JsonNodeValue<?> of(Object value, JsonNode parent, Cursor curToMe, JsonNode root) {
+        if (value instanceof Integer || value instanceof Long) {
+            return new OfLong((Number) value, parent, curToMe, root);
+        }
+        if (value instanceof Double) {
+            return new OfDouble((Double) value, parent, curToMe, root);
+        }
+        if (value instanceof Boolean) {
+            return new OfBoolean((Boolean) value, parent, curToMe, root);
+        }
+        return new JsonNodeValue<>(value, parent, curToMe, root);
     }
 
-    private void autoAnnotate() {
+    private void autoAnnotate(Object value) {
         if (this.whereIAm==null || !(this.whereIAm.getStep() instanceof DescentKey)) return;
         String key = ((DescentKey)this.whereIAm.getStep()).get();
+        String auto = autoAnnotation(key, value);
+        if (null!=auto) annotation = auto;
+    }
+
+    /**
+     * The annotation we'd show for that value under that key, if any (e.g. "2.00 minutes" for "wait_sec": 120).
+     * This only looks at the key and value so TrigramIndex can work it out without making the node.
+     */
+    static @Nullable String autoAnnotation(@NotNull String key, @Nullable Object value) {
+        String ret = null;
         if (key.endsWith("_seconds") || key.endsWith("_sec")
                 || key.endsWith("Seconds") || key.endsWith("Sec")) {
-            try {
-                double secs = asDouble();
-                Conversions.UNITS unit = Conversions.bestUnit(secs, Conversions.UNITS.SECONDS);
-                annotation = Conversions.toString(Conversions.convert(secs, Conversions.UNITS.SECONDS, unit), unit);
-            } catch (NumberFormatException _x) {
-                // value isn't a number, just do nothing
-                return;
-            }
+            Double secs = toDouble(value);
+            // value isn't a number, just do nothing
+            if (null==secs) return ret;
+            Conversions.UNITS unit = Conversions.bestUnit(secs, Conversions.UNITS.SECONDS);
+            ret = Conversions.toString(Conversions.convert(secs, Conversions.UNITS.SECONDS, unit), unit);
         }
         if (key.endsWith("_minutes") || key.endsWith("_mins")
             || key.endsWith("Minutes") || key.endsWith("Mins")) {
-            try {
-                double mins = asDouble();
-                Conversions.UNITS unit = Conversions.bestUnit(mins, Conversions.UNITS.MINUTES);
-                annotation = Conversions.toString(Conversions.convert(mins, Conversions.UNITS.MINUTES, unit), unit);
-            } catch (NumberFormatException _x) {
-                // value isn't a number, just do nothing
-                return;
-            }
+            Double mins = toDouble(value);
+            if (null==mins) return ret;
+            Conversions.UNITS unit = Conversions.bestUnit(mins, Conversions.UNITS.MINUTES);
+            ret = Conversions.toString(Conversions.convert(mins, Conversions.UNITS.MINUTES, unit), unit);
         }
         if (key.endsWith("_hours")
             || key.endsWith("Hours")) {
-            try {
-                double hours = asDouble();
-                Conversions.UNITS unit = Conversions.bestUnit(hours, Conversions.UNITS.HOURS);
-                if (unit != Conversions.UNITS.HOURS) {
-                    annotation = Conversions.toString(Conversions.convert(hours, Conversions.UNITS.HOURS, unit), unit);
-                }
-            } catch (NumberFormatException _x) {
-                // value isn't a number, just do nothing
-                return;
+            Double hours = toDouble(value);
+            if (null==hours) return ret;
+            Conversions.UNITS unit = Conversions.bestUnit(hours, Conversions.UNITS.HOURS);
+            if (unit != Conversions.UNITS.HOURS) {
+                ret = Conversions.toString(Conversions.convert(hours, Conversions.UNITS.HOURS, unit), unit);
             }
         }
         if (key.endsWith("_days") || key.endsWith("Days")) {
-            try {
-                double secs = asDouble();
-                Conversions.UNITS unit = Conversions.bestUnit(secs, Conversions.UNITS.DAYS);
-                annotation = Conversions.toString(Conversions.convert(secs, Conversions.UNITS.SECONDS, unit), unit);
-            } catch (NumberFormatException _x) {
-                // value isn't a number, just do nothing
-                return;
-            }
+            Double secs = toDouble(value);
+            if (null==secs) return ret;
+            Conversions.UNITS unit = Conversions.bestUnit(secs, Conversions.UNITS.DAYS);
+            ret = Conversions.toString(Conversions.convert(secs, Conversions.UNITS.SECONDS, unit), unit);
         }
         if (key.endsWith("On") || key.endsWith("At")|| key.endsWith("_on") || key.endsWith("_at")
                 || key.endsWith("_epoch") ||  key.endsWith("_timestamp") || key.endsWith("Timestamp")
                 || "timestamp".equalsIgnoreCase(key)) {
             // "CreatedOn", "bootedOn", etc. Assume we are getting a time value in epoch smth.
-            Date date = Conversions.nodeToDate(this);
+            Date date = Conversions.valueToDate(value);
             if (date!=null) {
                 // We were actually able to parse the date! Let's convert to local timezone.
-                annotation = Conversions.dateToString(date);
+                ret = Conversions.dateToString(date);
             }
         }
+        return ret;
+    }
+
+    /** True if the value is a number (a string holding a number doesn't count). */
+    public boolean isNumber() {
+        return value instanceof Double || value instanceof Integer
+                || value instanceof Long || value instanceof Float;
+    }
+
+    /** The number, without boxing it. Only meaningful if isNumber(). */
+    public double doubleValue() {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        return Double.NaN;
     }
 
     public @Nullable Double asDouble() throws NumberFormatException {
+        if (isNumber()) return doubleValue();
+        return toDouble(getValue());
+    }
+
+    // The value as a number, if it is one or it's a string that holds one.
+    static @Nullable Double toDouble(@Nullable Object value) {
         double secs;
         if (value instanceof Double) {
             secs = (Double)value;
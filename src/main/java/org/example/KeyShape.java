@@ -0,0 +1,122 @@
+package org.example;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The keys of a JSON map, in order, and where each key is.
+ *
+ * In a JSONL file most records have the same keys, so they can all share
+ * one KeyShape: intern() hands out the same instance for the same keys.
+ * A KeyShape never changes once created; don't modify the arrays it returns.
+ */
+public final class KeyShape {
+
+    // Don't keep too many shapes around, in case keys are data (like IDs).
+    private static final int MAX_INTERNED_SHAPES = 4096;
+    // Big maps are unlikely to repeat, no point in interning them.
+    private static final int MAX_INTERNED_KEYS = 64;
+    private static final ConcurrentHashMap<KeyShape, KeyShape> interned = new ConcurrentHashMap<>();
+
+    public static final KeyShape EMPTY = intern(new String[0]);
+
+    // Below this many keys, looking through the array beats a hash lookup.
+    private static final int MAX_LINEAR_SEARCH = 8;
+
+    private final @NotNull String[] keys;
+    private final int hash;
+    // Built the first time they're needed, since most lookups in intern() are for
+    // shapes we already have. Building them twice in a race is harmless.
+    private volatile HashMap<String, Integer> positions;
+    // 0, 1, 2, ...: the display positions when the map isn't sorted.
+    private volatile int[] identity;
+
+    private KeyShape(@NotNull String[] keys) {
+        this.keys = keys;
+        this.hash = Arrays.hashCode(keys);
+    }
+
+    /** The shape with these keys. The array must not be modified afterwards. */
+    public static KeyShape intern(@NotNull String[] keys) {
+        KeyShape shape = new KeyShape(keys);
+        if (keys.length > MAX_INTERNED_KEYS) return shape;
+        KeyShape existing = interned.get(shape);
+        if (null != existing) return existing;
+        if (interned.size() >= MAX_INTERNED_SHAPES) return shape;
+        existing = interned.putIfAbsent(shape, shape);
+        return (null == existing ? shape : existing);
+    }
+
+    /** This shape, plus one key at the end. */
+    public KeyShape with(String key) {
+        String[] more = Arrays.copyOf(keys, keys.length + 1);
+        more[keys.length] = key;
+        return intern(more);
+    }
+
+    /** Where the key is, or -1 if it's not one of ours. */
+    public int indexOf(Object key) {
+        if (keys.length <= MAX_LINEAR_SEARCH) {
+            // Jackson interns keys, so usually they're the same instance.
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) return i;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) return i;
+            }
+            return -1;
+        }
+        HashMap<String, Integer> pos = positions;
+        if (null == pos) {
+            pos = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                pos.put(keys[i], i);
+            }
+            positions = pos;
+        }
+        Integer ret = pos.get(key);
+        return (null == ret ? -1 : ret);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String key(int index) {
+        return keys[index];
+    }
+
+    /** The keys, in order. Shared: do not modify. */
+    public String[] keys() {
+        return keys;
+    }
+
+    /** {0, 1, 2, ...}, as many as there are keys. Shared: do not modify. */
+    int[] identity() {
+        int[] ret = identity;
+        if (null == ret) {
+            ret = new int[keys.length];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = i;
+            }
+            identity = ret;
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof KeyShape)) return false;
+        KeyShape other = (KeyShape) o;
+        return hash == other.hash && Arrays.equals(keys, other.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,52 @@
+package org.example;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads an array of lines as if it were a single UTF-8 text (lines separated by '\n'),
+ * without first joining them all into one big String.
+ */
+class LinesInputStream extends InputStream {
+    private final String[] lines;
+    // The next line to encode.
+    private int line = 0;
+    // The line we're reading from, encoded, with its newline.
+    private byte[] current = new byte[0];
+    // Where we are in it.
+    private int pos = 0;
+
+    LinesInputStream(String[] lines) {
+        this.lines = lines;
+    }
+
+    // Move on to the next line if we're done with this one. False at the end.
+    private boolean fill() {
+        while (pos >= current.length) {
+            if (line >= lines.length) return false;
+            current = (lines[line] + "\n").getBytes(StandardCharsets.UTF_8);
+            line++;
+            pos = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() {
+        if (!fill()) return -1;
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        int n = 0;
+        while (n < len && fill()) {
+            int count = Math.min(len - n, current.length - pos);
+            System.arraycopy(current, pos, b, off + n, count);
+            pos += count;
+            n += count;
+        }
+        return (n == 0 ? -1 : n);
+    }
+}
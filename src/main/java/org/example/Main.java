@@ -11,7 +11,6 @@ import com.googlecode.lanterna.terminal.Terminal;
 import com.googlecode.lanterna.terminal.virtual.DefaultVirtualTerminal;
 import org.example.cursor.FindCursor;
 import org.example.cursor.NoMultiCursor;
-import org.example.cursor.PathCursor;
 import org.example.ui.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -19,7 +18,12 @@ import org.jetbrains.annotations.VisibleForTesting;
 
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.awt.Toolkit;
@@ -53,8 +57,27 @@ public class Main {
 
     private OperationList operationList = new OperationList();
     private String notificationText = "";
+    // Non-null while the file is still loading in the background.
+    private @Nullable BackgroundLoader loader = null;
+    // Non-null if we're watching the file for new lines.
+    private @Nullable FileFollower follower = null;
+    private long lastFollowCheck = 0;
+    // The list the loader or the follower adds to. It stays the same when an operation
+    // replaces the root, so that undoing the operation shows what arrived in the meantime.
+    private @Nullable JsonNodeList growing = null;
+    // Whether values were added to that list while another root was shown.
+    private boolean unseenValues = false;
+    // Whether to index the text for faster searches, once the file is loaded.
+    private boolean indexWhenLoaded = false;
     private String copied = "";
 
+    // How often we check whether the followed file grew.
+    private static final long FOLLOW_INTERVAL_MS = 500;
+    // How long we search before checking for key presses again.
+    private static final long SEARCH_SLICE_MS = 50;
+    // Files at least this big start showing before they're fully loaded.
+    private static final long BACKGROUND_LOAD_MIN_BYTES = 16 * 1024 * 1024;
+
     // Non-null iff we're in debug mode.
     public @Nullable DebugMode debugMode;
 
@@ -109,12 +132,67 @@ public class Main {
     }
 
     protected static Main fromPathStr(@NotNull String pathStr, @Nullable Terminal terminalOverride) throws IOException {
+        return Main.fromPathStr(pathStr, terminalOverride, false);
+    }
+
+    protected static Main fromPathStr(@NotNull String pathStr, @Nullable Terminal terminalOverride, boolean lazy) throws IOException {
         // load the JSON, using NIO libraries if they were added to the classpath.
         Path path = Paths.get(pathStr);
-        JsonNode myJson = JsonNode.parse(path);
+        JsonNode myJson = JsonNode.parse(path, lazy);
+        return new Main(myJson, terminalOverride);
+    }
+
+    /**
+     * Open the file from its snapshot in the cache if it's unchanged since last time,
+     * otherwise parse it and save a snapshot.
+     **/
+    protected static Main fromPathStrCached(@NotNull String pathStr, @Nullable Terminal terminalOverride) throws IOException {
+        JsonNode myJson = SnapshotCache.inUserCacheDir().parse(Paths.get(pathStr));
         return new Main(myJson, terminalOverride);
     }
 
+    /**
+     * Start showing the file right away, and keep loading it in the background.
+     * Only works for JSONL or top-level arrays, otherwise we load the normal way.
+     **/
+    protected static Main fromPathStrInBackground(@NotNull String pathStr, @Nullable Terminal terminalOverride) throws IOException {
+        Path path = Paths.get(pathStr);
+        BackgroundLoader loader = BackgroundLoader.start(path);
+        if (null==loader) return Main.fromPathStr(pathStr, terminalOverride);
+        // The list grows as the values arrive.
+        JsonNode myJson = JsonNode.fromObject(new ArrayList<>(), null, new Cursor(), null);
+        if (loader.isJsonl()) myJson.setAnnotation("JSONL");
+        Main ret = new Main(myJson, terminalOverride);
+        ret.loader = loader;
+        ret.growing = (JsonNodeList) myJson;
+        return ret;
+    }
+
+    /**
+     * Open a JSONL file and keep watching it: lines added to the end of the file
+     * are added to the document.
+     **/
+    protected static Main fromPathStrFollowing(@NotNull String pathStr, @Nullable Terminal terminalOverride) throws IOException {
+        Path path = Paths.get(pathStr);
+        if (FileInput.isGzip(path)) throw new IOException("Cannot follow a compressed file");
+        FileFollower follower = new FileFollower(path);
+        List<Object> values = new ArrayList<>();
+        while (true) {
+            List<Object> more = follower.readNew();
+            if (more.isEmpty()) break;
+            values.addAll(more);
+        }
+        JsonNode myJson = JsonNode.fromObject(values, null, new Cursor(), null);
+        myJson.setAnnotation("JSONL");
+        Main ret = new Main(myJson, terminalOverride);
+        ret.follower = follower;
+        ret.growing = (JsonNodeList) myJson;
+        if (follower.getSkippedLines() > 0) {
+            ret.notificationText = "Skipped " + follower.getSkippedLines() + " lines that weren't valid JSON";
+        }
+        return ret;
+    }
+
     protected static Main fromLines(@NotNull String[] lines, @Nullable Terminal terminalOverride) throws IOException {
         JsonNode myJson = JsonNode.parseLines(lines);
         return new Main(myJson, terminalOverride);
@@ -162,16 +240,16 @@ public class Main {
             deleter = null;
         }
 
-        drawer.printJsonTree(g, TerminalPosition.TOP_LEFT_CORNER.withRelativeRow(-scroll), 0, myJson, deleter);
-        if (drawer.getCursorLineLastTime()>rowLimit) {
-            scroll += (drawer.getCursorLineLastTime()-rowLimit);
-            screen.clear();
-            drawer.printJsonTree(g, TerminalPosition.TOP_LEFT_CORNER.withRelativeRow(-scroll), 0, myJson, deleter);
-        } else if (drawer.getCursorLineLastTime()<0) {
-            scroll += drawer.getCursorLineLastTime();
-            screen.clear();
-            drawer.printJsonTree(g, TerminalPosition.TOP_LEFT_CORNER.withRelativeRow(-scroll), 0, myJson, deleter);
+        // Scroll so the cursor is on the screen, then draw just once.
+        int cursorLine = drawer.lineOfCursor(myJson, g.getSize().getColumns());
+        if (cursorLine >= 0) {
+            if (cursorLine - scroll > rowLimit) {
+                scroll = cursorLine - rowLimit;
+            } else if (cursorLine < scroll) {
+                scroll = cursorLine;
+            }
         }
+        drawer.printJsonTree(g, TerminalPosition.TOP_LEFT_CORNER.withRelativeRow(-scroll), 0, myJson, deleter);
         if (null!=sortControl) {
             sortControl.draw(screen.newTextGraphics());
         } else if (showFind) {
@@ -193,12 +271,35 @@ public class Main {
         if (bottomText.isEmpty()) {
             bottomText = myJson.rootInfo.userCursor.toString();
         }
-        int numCursors = myJson.atAnyCursor().size();
-        bottomText += " ♦ " + numCursors + " cursor";
-        if (numCursors!=1) bottomText += "s";
+        FindCursor search = runningSearch();
+        if (null!=search) {
+            // counting all the cursors would mean finishing the search now.
+            bottomText += " ♦ searching… " + search.countMatchesSoFar() + " found";
+        } else {
+            // counting the matches doesn't need a list of them.
+            int numCursors;
+            if (myJson.rootInfo.secondaryCursors instanceof FindCursor) {
+                numCursors = ((FindCursor) myJson.rootInfo.secondaryCursors).countCursors(myJson.rootInfo.userCursor);
+            } else {
+                numCursors = myJson.atAnyCursor().size();
+            }
+            bottomText += " ♦ " + numCursors + " cursor";
+            if (numCursors!=1) bottomText += "s";
 
-        if (numCursors>1 || !(myJson.rootInfo.secondaryCursors instanceof NoMultiCursor)) {
-            bottomText += " ♦ ESC for one";
+            if (numCursors>1 || !(myJson.rootInfo.secondaryCursors instanceof NoMultiCursor)) {
+                bottomText += " ♦ ESC for one";
+            }
+        }
+        if (null!=loader) {
+            bottomText += String.format(" ♦ loading… %d records / %d MB", loader.getRecordCount(), loader.getBytesRead() / (1024 * 1024));
+        }
+        if (null!=follower) {
+            bottomText += " ♦ following";
+        }
+        if (growing==myJson) unseenValues = false;
+        if (unseenValues) {
+            // new values went to the document from before the last change of root.
+            bottomText += " ♦ undo to see new values";
         }
         StringBuilder sb = new StringBuilder();
         sb.append(bottomText);
@@ -227,6 +328,116 @@ public class Main {
         return terminal.readInput();
     }
 
+    // Like waitForKey, but returns null if more of the file was loaded in the meantime.
+    private @Nullable KeyStroke waitForKeyOrNewData() throws IOException {
+        while (true) {
+            KeyStroke key = terminal.pollInput();
+            if (null != key) return key;
+            if (absorbLoaded()) return null;
+            if (advanceSearch()) return null;
+            long now = System.currentTimeMillis();
+            if (now - lastFollowCheck >= FOLLOW_INTERVAL_MS) {
+                lastFollowCheck = now;
+                if (absorbFollowed()) return null;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Search some more, if a search is still running (see FindCursor.startSearch).
+     * Returns true if it did, so there may be new matches to show.
+     **/
+    boolean advanceSearch() {
+        FindCursor search = runningSearch();
+        if (null==search) return false;
+        search.findSome(SEARCH_SLICE_MS);
+        return true;
+    }
+
+    private @Nullable FindCursor runningSearch() {
+        if (myJson.rootInfo.secondaryCursors instanceof FindCursor) {
+            FindCursor search = (FindCursor) myJson.rootInfo.secondaryCursors;
+            if (search.isSearching()) return search;
+        }
+        return null;
+    }
+
+    /**
+     * Add whatever the background loader has read since last time to the document.
+     * Returns true if anything changed.
+     **/
+    boolean absorbLoaded() {
+        if (null==loader) return false;
+        boolean finished = loader.isFinished();
+        List<Object> more = loader.takeLoaded();
+        if (!more.isEmpty()) {
+            growing.appendValues(more);
+            if (growing!=myJson) unseenValues = true;
+        }
+        if (finished) {
+            Exception error = loader.getError();
+            if (null!=error) {
+                notificationText = "Loading stopped: " + error.getMessage();
+            }
+            loader = null;
+            growing.storeCompactly();
+            startIndexing();
+            return true;
+        }
+        return !more.isEmpty();
+    }
+
+    /**
+     * Index the document's text in the background, if we were asked to and
+     * it's loaded. Only top-level lists (like JSONL files) get an index.
+     **/
+    void startIndexing() {
+        if (!indexWhenLoaded || null!=loader || !(myJson instanceof JsonNodeList)) return;
+        ((JsonNodeList)myJson).startIndexing();
+    }
+
+    /**
+     * Add the lines appended to the followed file since last time.
+     * Returns true if anything changed.
+     **/
+    boolean absorbFollowed() throws IOException {
+        if (null==follower) return false;
+        boolean changed = false;
+        int skippedBefore = follower.getSkippedLines();
+        List<Object> more = follower.readNew();
+        if (follower.checkTruncated()) {
+            // what we have is gone from the file: start a new document with what's there now.
+            JsonNode newJson = JsonNode.fromObject(more, null, new Cursor(), null);
+            newJson.setAnnotation("JSONL");
+            myJson = operationList.run(new OpReplaceRoot(myJson, newJson));
+            growing = (JsonNodeList) newJson;
+            notificationText = "File was truncated, reading it again from the start";
+            more = new ArrayList<>();
+            changed = true;
+        }
+        if (follower.getSkippedLines() > skippedBefore) {
+            notificationText = "Skipped " + (follower.getSkippedLines() - skippedBefore) + " lines that weren't valid JSON";
+            changed = true;
+        }
+        if (!more.isEmpty()) {
+            growing.appendValues(more);
+            if (growing!=myJson) unseenValues = true;
+            changed = true;
+        }
+        return changed;
+    }
+
+    /** True while the file is still loading in the background. **/
+    public boolean isLoading() {
+        return null!=loader;
+    }
+
     public String stringifyAllCursors() {
         String ret = "";
         for (JsonNode node : myJson.atAnyCursor()) {
@@ -394,6 +605,21 @@ public class Main {
         }
     }
 
+    // Move the cursor to whatever is that many lines below (or above) it on the screen.
+    // The drawer keeps the line counts, so this doesn't go through everything in between.
+    // Returns false if that didn't move the cursor.
+    public boolean pageCursor(int lines) {
+        int columns = screen.getTerminalSize().getColumns();
+        int from = drawer.lineOfCursor(myJson, columns);
+        if (from < 0) return false;
+        JsonNode current = myJson.atCursor();
+        JsonNode goal = drawer.nodeAtLine(myJson, from + lines, columns);
+        if (goal == current) return false;
+        drawer.directionOfTravel = (lines < 0 ? -1 : 1);
+        myJson.rootInfo.setPrimaryCursor(goal.whereIAm);
+        return true;
+    }
+
     public void moveCursorNextCousin(boolean doScroll) {
         JsonNode atCursor = myJson.atCursor();
         var step = atCursor.asCursor().getStep();
@@ -523,7 +749,14 @@ public class Main {
      * Return TRUE if you should continue, FALSE if quitting.
      */
     private boolean actOnAllKeys() throws IOException {
-        KeyStroke key = waitForKey();
+        KeyStroke key;
+        if (null!=loader || null!=follower || null!=runningSearch()) {
+            key = waitForKeyOrNewData();
+            // new data: time to redraw.
+            if (null==key) return true;
+        } else {
+            key = waitForKey();
+        }
         if (!actOnKey(key)) return false;
         while (true) {
             key = terminal.pollInput();
@@ -717,6 +950,7 @@ public class Main {
                             findControl.getSearchKeys(), findControl.getSearchValues(),
                             findControl.getIgnoreComments(),
                             findControl.getUseRegexp());
+                    fc.startSearch(myJson, myJson.rootInfo.secondaryCursors);
                     myJson.rootInfo.setSecondaryCursors(fc);
 
                     JsonNode primary = myJson.rootInfo.userCursor.getData();
@@ -755,6 +989,10 @@ public class Main {
                                 findControl.getSearchKeys(), findControl.getSearchValues(),
                                 findControl.getIgnoreComments(),
                                 findControl.getUseRegexp());
+                        // this replaces the previous search, which may not be done.
+                        // The new one runs a bit at a time between key presses.
+                        fc.startSearch(myJson, myJson.rootInfo.secondaryCursors);
+                        fc.findSome(SEARCH_SLICE_MS);
                         myJson.rootInfo.setSecondaryCursors(fc);
                     } else {
                         myJson.rootInfo.setSecondaryCursors(cursorsBeforeFind.secondaryCursors);
@@ -929,15 +1167,10 @@ public class Main {
 //                        myJson = JsonNode.parse(path);
 //                    }
             if (key.getKeyType() == KeyType.PageDown) {
-                for (int i = 0; i < rowLimit-1; i++) {
-                    moveCursorDown(false);
-                }
-                moveCursorDown(true);
+                if (!pageCursor(rowLimit)) moveCursorDown(true);
             }
             if (key.getKeyType() == KeyType.PageUp) {
-                for (int i = 0; i < rowLimit; i++) {
-                    moveCursorUp();
-                }
+                if (!pageCursor(-rowLimit)) moveCursorUp();
             }
             if (key.getKeyType() == KeyType.Home || pressed=='g') {
                 myJson.rootInfo.setPrimaryCursor(myJson.whereIAm);
@@ -968,7 +1201,7 @@ public class Main {
             }
             if (pressed=='0') {
                 for (JsonNode node : myJson.atAnyCursor()) {
-                    node.folded = true;
+                    node.setFolded(true);
                 }
             }
             if (pressed=='1') {
@@ -1068,7 +1301,7 @@ public class Main {
             System.out.println("(C) 2025 Jean-Philippe Martin");
             System.out.println();
             System.out.println("Usage:");
-            System.out.println("./jj myfile.json [--theme LIGHT|DARK|BW|WB] [--goto <path>]");
+            System.out.println("./jj myfile.json [--theme LIGHT|DARK|BW|WB] [--goto <path>] [--lazy] [--follow] [--cache] [--index]");
             System.out.println("OR");
             System.out.println("java -jar JavaJson*.jar myfile.json --print <path>");
             System.out.println();
@@ -1077,6 +1310,11 @@ public class Main {
             System.out.println("./jj testdata/hello.json --goto '.players[0].score'");
             System.out.println("./jj testdata/hello.json --print '.players[*].name'");
             System.out.println();
+            System.out.println("--lazy: for big arrays or JSONL files, only parse the entries as they are shown.");
+            System.out.println("--follow: for JSONL files, keep adding the lines appended to the file (like tail -f).");
+            System.out.println("--cache: keep a snapshot in ~/.cache/jj so the file opens faster next time.");
+            System.out.println("--index: for big arrays or JSONL files, index the text in the background so searches are faster.");
+            System.out.println();
             System.out.println("Key bindings:");
             System.out.println(keys_help);
             return;
@@ -1091,6 +1329,10 @@ public class Main {
         options.put("--theme", null);
         HashMap<String, Boolean> flags = new HashMap<>();
         flags.put("--debug", false);
+        flags.put("--lazy", false);
+        flags.put("--follow", false);
+        flags.put("--cache", false);
+        flags.put("--index", false);
 
 
         int i=-1;
@@ -1125,27 +1367,35 @@ public class Main {
             fileName = s;
         }
 
-        Main main;
+        String p = options.get("--print");
         if (null==fileName) {
             System.out.println("Missing: a file name to open. Will start from an empty document.");
-            main = Main.fromLines(new String[] {"[]"}, null);
-        } else {
-            main = Main.fromPathStr(fileName);
         }
-        String p = options.get("--print");
         if (null!=p) {
-            JsonNode myJson = main.myJson;
-            main.closeScreen();
-            // print those values, then quit
-            PathCursor selected = new PathCursor(p);
-            java.util.List<JsonNode> nodes = new ArrayList<>();
-            selected.addAllNodes(myJson.asCursor(), nodes);
-            for (JsonNode n : nodes) {
-                Object value = n.getValue();
-                System.out.println((null==value?"null":value.toString()));
+            // print those values, then quit. No need for a screen or a tree.
+            PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+            if (null==fileName) {
+                PathPrinter.print(new ArrayList<>(), p, out);
+            } else {
+                PathPrinter.print(Paths.get(fileName), p, out);
             }
+            out.flush();
             return;
         }
+        Main main;
+        if (null==fileName) {
+            main = Main.fromLines(new String[] {"[]"}, null);
+        } else if (flags.get("--follow")) {
+            main = Main.fromPathStrFollowing(fileName, null);
+        } else if (flags.get("--cache")) {
+            main = Main.fromPathStrCached(fileName, null);
+        } else if (!flags.get("--lazy") && Files.size(Paths.get(fileName)) >= BACKGROUND_LOAD_MIN_BYTES) {
+            main = Main.fromPathStrInBackground(fileName, null);
+        } else {
+            main = Main.fromPathStr(fileName, null, flags.get("--lazy"));
+        }
+        main.indexWhenLoaded = flags.get("--index");
+        main.startIndexing();
         String g = options.get("--goto");
         if (null!=g) try {
             main.go_to(g);
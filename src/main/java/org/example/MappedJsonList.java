@@ -0,0 +1,251 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The top-level values of a big file, parsed only when someone asks for them.
+ *
+ * When we open the file we map it in memory and do a quick structural scan
+ * (just brackets, braces, and strings) to find where each element starts and ends.
+ * An element is parsed the first time "get" asks for it. We only keep soft references
+ * to the parsed values, so elements nobody is looking at can be dropped and re-parsed later.
+ *
+ * This works for files that are a single top-level array, and for JSONL files.
+ * For anything else, "open" returns null and the caller should parse the normal way.
+ */
+public class MappedJsonList extends AbstractList<Object> {
+
+    // How much of the file we map at once. MappedByteBuffers are limited to 2GB.
+    private static final long SEGMENT_SIZE = 1L << 30;
+    // We copy each element into a byte array to parse it, so it can't be bigger than that.
+    private static final long MAX_ELEMENT_SIZE = Integer.MAX_VALUE - 8;
+
+    private final MappedByteBuffer[] segments;
+    private final ObjectReader reader;
+    // Where each element starts, and how many bytes it takes.
+    private final long[] starts;
+    private final int[] lengths;
+    private final boolean isJsonl;
+    private final SoftReference<?>[] parsed;
+    // How many times we parsed an element.
+    private final AtomicInteger parseCount = new AtomicInteger();
+
+    /**
+     * Maps the file and finds its elements.
+     * @return null if the file isn't a top-level array or JSONL,
+     *         or uses features the scan doesn't understand (like comments).
+     */
+    public static @Nullable MappedJsonList open(Path path, ObjectReader reader) throws IOException {
+        MappedByteBuffer[] segments;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+        Scanner scanner = new Scanner();
+        long pos = 0;
+        for (MappedByteBuffer segment : segments) {
+            int limit = segment.limit();
+            for (int i = 0; i < limit; i++) {
+                if (!scanner.accept(segment.get(i), pos + i)) return null;
+            }
+            pos += limit;
+        }
+        if (!scanner.finish(pos)) return null;
+        return new MappedJsonList(segments, reader, scanner);
+    }
+
+    private MappedJsonList(MappedByteBuffer[] segments, ObjectReader reader, Scanner scanner) {
+        this.segments = segments;
+        this.reader = reader;
+        this.starts = Arrays.copyOf(scanner.starts, scanner.count);
+        this.lengths = Arrays.copyOf(scanner.lengths, scanner.count);
+        this.isJsonl = !scanner.isArray;
+        this.parsed = new SoftReference<?>[scanner.count];
+    }
+
+    /** True if the file was JSONL, false if it was a top-level array. */
+    public boolean isJsonl() {
+        return isJsonl;
+    }
+
+    @Override
+    public int size() {
+        return starts.length;
+    }
+
+    @Override
+    public Object get(int index) {
+        SoftReference<?> ref = parsed[index];
+        Object ret = (null == ref ? null : ref.get());
+        if (null != ret) return ret;
+        parseCount.incrementAndGet();
+        try {
+            ret = reader.readValue(bytesOf(index));
+        } catch (IOException iox) {
+            throw new UncheckedIOException("Unable to parse element " + index, iox);
+        }
+        // JSON null doesn't need caching.
+        if (null != ret) parsed[index] = new SoftReference<>(ret);
+        return ret;
+    }
+
+    // For testing: how many elements we parsed so far (counting those parsed again).
+    int getParseCount() {
+        return parseCount.get();
+    }
+
+    // Copy the bytes of that element out of the mapped file.
+    private byte[] bytesOf(int index) {
+        byte[] ret = new byte[lengths[index]];
+        long pos = starts[index];
+        int copied = 0;
+        while (copied < ret.length) {
+            // duplicate so concurrent readers don't fight over the buffer's position.
+            ByteBuffer segment = segments[(int) (pos / SEGMENT_SIZE)].duplicate();
+            int offset = (int) (pos % SEGMENT_SIZE);
+            int count = Math.min(ret.length - copied, segment.limit() - offset);
+            segment.position(offset);
+            segment.get(ret, copied, count);
+            copied += count;
+            pos += count;
+        }
+        return ret;
+    }
+
+    /**
+     * Finds where the top-level elements are, one byte at a time.
+     * It only looks at brackets, braces, commas and strings, so it doesn't
+     * check that the elements are valid JSON: the parser will do that later.
+     */
+    static class Scanner {
+        long[] starts = new long[1024];
+        int[] lengths = new int[1024];
+        int count = 0;
+        // true: elements are inside a top-level array. false: JSONL.
+        boolean isArray = false;
+
+        private boolean started = false;
+        private boolean arrayClosed = false;
+        private int depth = 0;
+        private boolean inString = false;
+        private boolean escaped = false;
+        // start of the element we're in, or -1 if we're between elements.
+        private long elementStart = -1;
+        // position just after the last byte that wasn't whitespace.
+        private long lastSignificant = 0;
+
+        // Returns false if this isn't something we can index.
+        boolean accept(byte b, long pos) throws IOException {
+            if (inString) {
+                lastSignificant = pos + 1;
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                    // a top-level string in JSONL ends here.
+                    if (!isArray && depth == 0) endElement();
+                }
+                return true;
+            }
+            boolean whitespace = (b == ' ' || b == '\n' || b == '\r' || b == '\t');
+            if (whitespace) {
+                // top-level numbers, true, false, null end at whitespace.
+                if (!isArray && depth == 0 && elementStart >= 0) endElement();
+                return true;
+            }
+            if (b == '/' || b == '#') {
+                // comments: the scan doesn't handle those.
+                return false;
+            }
+            if (arrayClosed) {
+                // something after the top-level array
+                return false;
+            }
+            if (!started) {
+                started = true;
+                if (b == '[') {
+                    isArray = true;
+                    depth = 1;
+                    lastSignificant = pos + 1;
+                    return true;
+                }
+            }
+            int elementDepth = (isArray ? 1 : 0);
+            if (depth == elementDepth && elementStart < 0) {
+                if (isArray && b == ']') {
+                    // empty array, or trailing comma.
+                    if (count > 0) return false;
+                    depth = 0;
+                    arrayClosed = true;
+                    return true;
+                }
+                if (b == ',') return false;
+                elementStart = pos;
+            }
+            if (isArray && depth == 1 && (b == ',' || b == ']')) {
+                endElement();
+                if (b == ']') {
+                    depth = 0;
+                    arrayClosed = true;
+                }
+                return true;
+            }
+            lastSignificant = pos + 1;
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth < elementDepth) return false;
+                if (!isArray && depth == 0) endElement();
+            }
+            return true;
+        }
+
+        boolean finish(long size) throws IOException {
+            if (inString) return false;
+            if (isArray) return arrayClosed;
+            if (depth != 0) return false;
+            if (elementStart >= 0) endElement();
+            // A single value that isn't an array: nothing to be lazy about.
+            return count > 1;
+        }
+
+        private void endElement() throws IOException {
+            if (elementStart < 0) return;
+            long length = lastSignificant - elementStart;
+            if (length > MAX_ELEMENT_SIZE) {
+                throw new IOException("Element " + count + " is too big to parse (" + length + " bytes)");
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            starts[count] = elementStart;
+            lengths[count] = (int) length;
+            count++;
+            elementStart = -1;
+        }
+    }
+}
@@ -85,6 +85,28 @@ public class OpGroupby implements Operation {
         return oldRoot;
     }
 
+    private static void addToGroup(LinkedHashMap<String, List<JsonNodeBuilder>> groups, String groupName, JsonNodeBuilder kid) {
+        if (!(groups.containsKey(groupName))) groups.put(groupName, new ArrayList<>());
+        groups.get(groupName).add(kid);
+    }
+
+    // The name of the group this node goes in.
+    private static String groupName(JsonNode kid, String keyToGroupBy) {
+        if (!(kid instanceof JsonNodeMap)) return "(null)";
+        JsonNodeMap kidMap = (JsonNodeMap) kid;
+        try {
+            JsonNode value = kidMap.getChild(keyToGroupBy);
+            if ((value instanceof JsonNodeValue)) {
+                return value.getValue().toString();
+            }
+            // "other" is the group for maps that have a map or list under that key.
+            return "(other)";
+        } catch (NoSuchElementException nsel) {
+            // "null" is the group for maps that don't have that key
+            return "(null)";
+        }
+    }
+
     // returns the new root
     private JsonNode groupby(JsonNodeMap mapToGroup, String keyToGroupBy) {
         JsonNodeList list = (JsonNodeList)(mapToGroup.parent);
@@ -93,31 +115,32 @@ public class OpGroupby implements Operation {
         Cursor cursorToOld = list.whereIAm;
         // find the groups
         // (value of the key being grouped by -> list of objects that have that value for that key)
-        LinkedHashMap<String, List<JsonNode>> groups = new LinkedHashMap<>();
-        JsonNodeIterator it = list.iterateChildren(true);
-        while (null!=it) {
-            JsonNode kid = it.get();
-            it = it.next();
-            String groupName;
-            if (!(kid instanceof JsonNodeMap)) {
-                groupName = "(null)";
+        LinkedHashMap<String, List<JsonNodeBuilder>> groups = new LinkedHashMap<>();
+        // If the list is stored by column, we can read the key's value without
+        // creating a node for it in every map. Only for the rows that don't have
+        // a node yet, though: once there's a node, it may have been changed.
+        ColumnarList columns = null;
+        int column = -1;
+        if (list.values instanceof ColumnarList) {
+            columns = (ColumnarList) list.values;
+            column = columns.columnIndex(keyToGroupBy);
+            if (column >= 0 && !columns.isScalarColumn(column)) column = -1;
+        }
+        if (null != list.aggregate) {
+            addToGroup(groups, groupName(list.aggregate, keyToGroupBy), JsonNode.Builder.fromNode(list.aggregate));
+        }
+        for (int index : list.getIndexesInOrder()) {
+            Object peeked = list.peek(index);
+            Object fromColumn = null;
+            if (column >= 0 && !(peeked instanceof JsonNode)) {
+                fromColumn = columns.getField(index, column);
+            }
+            if (null != fromColumn) {
+                addToGroup(groups, fromColumn.toString(), JsonNode.Builder.fromObject(peeked));
             } else {
-                JsonNodeMap kidMap = (JsonNodeMap) kid;
-                try {
-                    JsonNode value = kidMap.getChild(keyToGroupBy);
-                    if ((value instanceof JsonNodeValue)) {
-                        groupName = value.getValue().toString();
-                    } else {
-                        // "other" is the group for maps that have a map or list under that key.
-                        groupName = "(other)";
-                    }
-                } catch (NoSuchElementException nsel) {
-                    // "null" is the group for maps that don't have that key
-                    groupName = "(null)";
-                }
+                JsonNode kid = list.get(index);
+                addToGroup(groups, groupName(kid, keyToGroupBy), JsonNode.Builder.fromNode(kid));
             }
-            if (!(groups.containsKey(groupName))) groups.put(groupName, new ArrayList<>());
-            groups.get(groupName).add(kid);
         }
 
         // Don't group if there's nothing there.
@@ -127,7 +150,7 @@ public class OpGroupby implements Operation {
         // for each of the values of the map, create a JsonNodeList.
         LinkedHashMap<String, JsonNodeBuilder> groupsAsNodes = new LinkedHashMap<>();
         for (String key : groups.keySet()) {
-            JsonNodeBuilder[] kidsArray = groups.get(key).stream().map(JsonNode.Builder::new).toArray(JsonNodeBuilder[]::new);
+            JsonNodeBuilder[] kidsArray = groups.get(key).toArray(new JsonNodeBuilder[0]);
             groupsAsNodes.put(key, new JsonNodeList.Builder(kidsArray));
         }
 
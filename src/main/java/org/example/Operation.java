@@ -143,6 +143,8 @@ public interface Operation {
                             didSomething++;
                             node.aggregate = null;
                             node.aggregateComment = null;
+                            node.invalidateLines();
+                            node.treeChanged();
                         }
                     }
                 } else if (!addAgg) {
@@ -151,6 +153,8 @@ public interface Operation {
                         didSomething++;
                         node.aggregate = null;
                         node.aggregateComment = null;
+                        node.invalidateLines();
+                        node.treeChanged();
                     }
                 }
             }
@@ -351,7 +355,7 @@ public interface Operation {
 
         @Override
         public void onTransform(JsonNode newNode) {
-            newNode.annotation = "Parsed from a string";
+            newNode.setAnnotation("Parsed from a string");
         }
 
         public String toString() {
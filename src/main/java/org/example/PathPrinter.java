@@ -0,0 +1,81 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import org.example.cursor.PathCursor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * What "--print" does: print the values at a path, without any of the UI.
+ *
+ * We read the file once and never build the tree: a document is streamed through
+ * the path (see PathCursor.findInStream) so only the matches are kept, and JSONL is
+ * read one line at a time. The output is the same as what we'd get by opening the
+ * file and printing each selected node's value.
+ */
+public class PathPrinter {
+
+    /** Print the values at "path" in the file, one per line. */
+    public static void print(Path file, String path, PrintStream out) throws IOException {
+        PathCursor query = new PathCursor(path);
+        Consumer<Object> printer = printer(out);
+        boolean perLine = (FileInput.sniff(file) == FileInput.Format.JSONL);
+        try (InputStream in = FileInput.open(file);
+             JsonParser parser = JsonNode.READER.createParser(in)) {
+            if (null == parser.nextToken()) {
+                // empty file, same as an empty JSONL file.
+                if (query.selectsRoot()) printer.accept(new ArrayList<>());
+                return;
+            }
+            if (perLine) {
+                printJsonl(parser, query, printer);
+                return;
+            }
+            query.findInStream(parser, JsonNode.READER, printer);
+            if (null != parser.nextToken()) {
+                throw new IOException("There is more than one JSON value in " + file
+                        + ", and they aren't one per line: open it without --print");
+            }
+        }
+    }
+
+    /** Same, for a document we already have (as parsed: maps, lists and plain values). */
+    public static void print(Object document, String path, PrintStream out) {
+        new PathCursor(path).findIn(document, printer(out));
+    }
+
+    private static Consumer<Object> printer(PrintStream out) {
+        return value -> out.println(null == value ? "null" : value.toString());
+    }
+
+    // One value per line: they're the elements of the root list.
+    // Unless there's only one, then it's the root.
+    private static void printJsonl(JsonParser parser, PathCursor query, Consumer<Object> printer) throws IOException {
+        Object first = JsonNode.READER.readValue(parser);
+        if (null == parser.nextToken()) {
+            query.findIn(first, printer);
+            return;
+        }
+        if (query.selectsRoot()) {
+            // we need all of them at once, after all.
+            List<Object> all = new ArrayList<>();
+            all.add(first);
+            do {
+                all.add(JsonNode.READER.readValue(parser));
+            } while (null != parser.nextToken());
+            query.findIn(all, printer);
+            return;
+        }
+        query.findInElement(0, first, printer);
+        int index = 1;
+        do {
+            query.findInElement(index++, JsonNode.READER.readValue(parser), printer);
+        } while (null != parser.nextToken());
+    }
+}
@@ -0,0 +1,119 @@
+package org.example;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A JSON map: the keys come from a (usually shared) KeyShape,
+ * and the values are in a plain array in the same order.
+ *
+ * This is what we parse JSON objects into. It takes a lot less memory than
+ * a LinkedHashMap when there are many records with the same keys.
+ * Keys can be added or replaced, but not removed.
+ */
+public class ShapedMap extends AbstractMap<String, Object> {
+
+    private @NotNull KeyShape shape;
+    private Object[] values;
+
+    /** The values must be in the same order as the shape's keys. */
+    public ShapedMap(@NotNull KeyShape shape, Object[] values) {
+        if (shape.size() != values.length) {
+            throw new IllegalArgumentException("Expected " + shape.size() + " values, got " + values.length);
+        }
+        this.shape = shape;
+        this.values = values;
+    }
+
+    /** A copy of the map, in the same order. */
+    public static ShapedMap copyOf(Map<String, Object> map) {
+        if (map instanceof ShapedMap) {
+            ShapedMap other = (ShapedMap) map;
+            return new ShapedMap(other.shape, other.values.clone());
+        }
+        String[] keys = new String[map.size()];
+        Object[] values = new Object[map.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            keys[i] = e.getKey();
+            values[i] = e.getValue();
+            i++;
+        }
+        return new ShapedMap(KeyShape.intern(keys), values);
+    }
+
+    public @NotNull KeyShape getShape() {
+        return shape;
+    }
+
+    /** The value for the key at this position in the shape. */
+    public Object getAt(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shape.indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = shape.indexOf(key);
+        return (i < 0 ? null : values[i]);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int i = shape.indexOf(key);
+        if (i >= 0) {
+            Object old = values[i];
+            values[i] = value;
+            return old;
+        }
+        shape = shape.with(key);
+        values = Arrays.copyOf(values, values.length + 1);
+        values[values.length - 1] = value;
+        return null;
+    }
+
+    @Override
+    public @NotNull Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public @NotNull Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (next >= values.length) throw new NoSuchElementException();
+                        int i = next++;
+                        return new AbstractMap.SimpleImmutableEntry<>(shape.key(i), values[i]);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Parses JSON into plain Java objects, like Jackson does for Object.class,
+ * except that JSON objects become ShapedMaps instead of LinkedHashMaps.
+ * Records with the same keys then share one KeyShape, and big arrays of
+ * such records are stored by column.
+ */
+public class ShapedObjectDeserializer extends StdDeserializer<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    // Above this many keys, we use a HashMap to look for duplicates.
+    private static final int MAX_LINEAR_SEARCH = 16;
+
+    public ShapedObjectDeserializer() {
+        super(Object.class);
+    }
+
+    @Override
+    public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if (null == token) token = p.nextToken();
+        switch (token) {
+            case START_OBJECT:
+            case FIELD_NAME:
+                return readObject(p, ctxt);
+            case START_ARRAY:
+                return readArray(p, ctxt);
+            case VALUE_STRING:
+                return p.getText();
+            case VALUE_NUMBER_INT:
+                if (ctxt.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)) return p.getBigIntegerValue();
+                return p.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                if (ctxt.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)) return p.getDecimalValue();
+                return p.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case VALUE_EMBEDDED_OBJECT:
+                return p.getEmbeddedObject();
+            default:
+                return ctxt.handleUnexpectedToken(Object.class, p);
+        }
+    }
+
+    @Override
+    public Object getNullValue(DeserializationContext ctxt) {
+        return null;
+    }
+
+    private Object readArray(JsonParser p, DeserializationContext ctxt) throws IOException {
+        List<Object> ret = new ArrayList<>();
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            ret.add(deserialize(p, ctxt));
+        }
+        return JsonNode.storeCompactly(ret);
+    }
+
+    private Object readObject(JsonParser p, DeserializationContext ctxt) throws IOException {
+        String[] keys = new String[8];
+        Object[] values = new Object[8];
+        int count = 0;
+        // For big maps, so checking for duplicate keys doesn't get slow.
+        HashMap<String, Integer> seen = null;
+        // Either we're at the START_OBJECT, or already at the first key.
+        String key = (p.currentToken() == JsonToken.START_OBJECT ? p.nextFieldName() : p.currentName());
+        for (; null != key; key = p.nextFieldName()) {
+            p.nextToken();
+            Object value = deserialize(p, ctxt);
+            int already;
+            if (null != seen) {
+                already = seen.getOrDefault(key, -1);
+            } else {
+                already = indexOf(keys, count, key);
+            }
+            if (already >= 0) {
+                // Duplicate key: the last one wins, like in a LinkedHashMap.
+                values[already] = value;
+                continue;
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            keys[count] = key;
+            values[count] = value;
+            count++;
+            if (null != seen) {
+                seen.put(key, count - 1);
+            } else if (count > MAX_LINEAR_SEARCH) {
+                seen = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    seen.put(keys[i], i);
+                }
+            }
+        }
+        return new ShapedMap(KeyShape.intern(Arrays.copyOf(keys, count)), Arrays.copyOf(values, count));
+    }
+
+    private static int indexOf(String[] keys, int count, String key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i].equals(key)) return i;
+        }
+        return -1;
+    }
+}
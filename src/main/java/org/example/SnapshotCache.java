@@ -0,0 +1,304 @@
+package org.example;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a binary copy of parsed documents, so opening the same file again is fast.
+ *
+ * The snapshot is keyed by the file's path, size and modification time: if the file
+ * changes, the snapshot is ignored and replaced. When loading a snapshot of a list
+ * (a top-level array or JSONL), the elements are decoded only when they're needed.
+ *
+ * Snapshot layout:
+ *   magic, source size, source mtime, root kind, element count, where the offset table is,
+ *   then the elements, then the offset table (where each element starts).
+ * Each value is a type tag followed by its data (see the TAG_ constants).
+ */
+public class SnapshotCache {
+
+    private static final long MAGIC = 0x4a4a534e41505331L; // "JJSNAPS1"
+    private static final int HEADER_SIZE = 8 + 8 + 8 + 4 + 4 + 8;
+
+    // What the root of the document is.
+    private static final int ROOT_SINGLE = 0;
+    private static final int ROOT_ARRAY = 1;
+    private static final int ROOT_JSONL = 2;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_FALSE = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_DOUBLE = 5;
+    private static final byte TAG_BIGINT = 6;
+    private static final byte TAG_BIGDEC = 7;
+    private static final byte TAG_STRING = 8;
+    private static final byte TAG_LIST = 9;
+    private static final byte TAG_MAP = 10;
+
+    private final Path cacheDir;
+
+    public SnapshotCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /** The cache in the user's cache directory (~/.cache/jj, or $XDG_CACHE_HOME/jj). */
+    public static SnapshotCache inUserCacheDir() {
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        Path base = (null != xdg && !xdg.isEmpty()) ? Paths.get(xdg) : Paths.get(System.getProperty("user.home"), ".cache");
+        return new SnapshotCache(base.resolve("jj"));
+    }
+
+    /**
+     * Load the file from its snapshot if we have an up-to-date one.
+     * Otherwise parse it, and save a snapshot for next time.
+     */
+    public JsonNode parse(Path path) throws IOException {
+        JsonNode ret = load(path);
+        if (null != ret) return ret;
+        ret = JsonNode.parse(path);
+        try {
+            save(path, ret);
+        } catch (IOException iox) {
+            // No snapshot this time, that's fine.
+        }
+        return ret;
+    }
+
+    /** Returns null if there's no snapshot for this version of the file. */
+    public @Nullable JsonNode load(Path path) throws IOException {
+        Path snapshot = snapshotPath(path);
+        if (!Files.exists(snapshot)) return null;
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            // we map the snapshot in one piece, so it can't be more than 2GB.
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) return null;
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.getLong(0) != MAGIC
+                || buf.getLong(8) != Files.size(path)
+                || buf.getLong(16) != Files.getLastModifiedTime(path).toMillis()) {
+            return null;
+        }
+        int kind = buf.getInt(24);
+        SnapshotList list = new SnapshotList(buf, buf.getInt(28), (int) buf.getLong(32));
+        if (kind == ROOT_SINGLE) {
+            return JsonNode.fromObject(list.get(0), null, new Cursor(), null);
+        }
+        JsonNode ret = JsonNode.fromObject(list, null, new Cursor(), null);
+        if (kind == ROOT_JSONL) ret.setAnnotation("JSONL");
+        return ret;
+    }
+
+    /** Write a snapshot of the parsed file. */
+    public void save(Path path, JsonNode parsed) throws IOException {
+        int kind;
+        List<?> elements;
+        if (parsed instanceof JsonNodeList) {
+            kind = ("JSONL".equals(parsed.getAnnotation()) ? ROOT_JSONL : ROOT_ARRAY);
+            elements = (List<?>) parsed.getValue();
+        } else {
+            kind = ROOT_SINGLE;
+            elements = Collections.singletonList(parsed.getValue());
+        }
+        Files.createDirectories(cacheDir);
+        Path snapshot = snapshotPath(path);
+        // Write to a temporary file first, so a half-written snapshot is never used.
+        Path tmp = Files.createTempFile(cacheDir, "snapshot", ".tmp");
+        try {
+            long tableStart;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeLong(MAGIC);
+                out.writeLong(Files.size(path));
+                out.writeLong(Files.getLastModifiedTime(path).toMillis());
+                out.writeInt(kind);
+                out.writeInt(elements.size());
+                // The offset table goes after the elements.
+                out.writeLong(0);
+                int[] starts = new int[elements.size()];
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i] = out.size();
+                    write(out, elements.get(i));
+                    // size() stops counting at 2GB.
+                    if (out.size() == Integer.MAX_VALUE) throw new IOException("Too big for a snapshot");
+                }
+                tableStart = out.size();
+                for (int start : starts) {
+                    out.writeInt(start);
+                }
+            }
+            // go back and fill in where the table is.
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(8).putLong(0, tableStart), HEADER_SIZE - 8);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // The snapshot's name comes from a hash of the file's full path.
+    Path snapshotPath(Path path) throws IOException {
+        String fullPath = path.toAbsolutePath().normalize().toString();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(fullPath.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return cacheDir.resolve(name + ".snap");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+
+    private static void write(DataOutputStream out, Object value) throws IOException {
+        if (null == value) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(TAG_BIGINT);
+            writeString(out, value.toString());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TAG_BIGDEC);
+            writeString(out, value.toString());
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TAG_LIST);
+            out.writeInt(list.size());
+            for (Object o : list) {
+                write(out, o);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TAG_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                writeString(out, (String) e.getKey());
+                write(out, e.getValue());
+            }
+        } else {
+            throw new IOException("Cannot save a value of type " + value.getClass().getSimpleName());
+        }
+    }
+
+    // writeUTF is limited to 64KB, so we write the length ourselves.
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** The elements of a snapshot, decoded as they are asked for. */
+    static class SnapshotList extends AbstractList<Object> {
+        private final ByteBuffer buf;
+        private final int size;
+        private final int tableStart;
+        private final SoftReference<?>[] decoded;
+
+        SnapshotList(ByteBuffer buf, int size, int tableStart) {
+            this.buf = buf;
+            this.size = size;
+            this.tableStart = tableStart;
+            this.decoded = new SoftReference<?>[size];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            SoftReference<?> ref = decoded[index];
+            Object ret = (null == ref ? null : ref.get());
+            if (null != ret) return ret;
+            // duplicate so each decoding has its own position.
+            ByteBuffer in = buf.duplicate();
+            in.position(buf.getInt(tableStart + 4 * index));
+            ret = read(in);
+            if (null != ret) decoded[index] = new SoftReference<>(ret);
+            return ret;
+        }
+
+        private static Object read(ByteBuffer in) {
+            byte tag = in.get();
+            switch (tag) {
+                case TAG_NULL: return null;
+                case TAG_FALSE: return false;
+                case TAG_TRUE: return true;
+                case TAG_INT: return in.getInt();
+                case TAG_LONG: return in.getLong();
+                case TAG_DOUBLE: return in.getDouble();
+                case TAG_BIGINT: return new BigInteger(readString(in));
+                case TAG_BIGDEC: return new BigDecimal(readString(in));
+                case TAG_STRING: return readString(in);
+                case TAG_LIST: {
+                    int count = in.getInt();
+                    List<Object> ret = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        ret.add(read(in));
+                    }
+                    return ret;
+                }
+                case TAG_MAP: {
+                    int count = in.getInt();
+                    String[] keys = new String[count];
+                    Object[] values = new Object[count];
+                    for (int i = 0; i < count; i++) {
+                        // intern so records with the same keys share them, like when parsing.
+                        keys[i] = readString(in).intern();
+                        values[i] = read(in);
+                    }
+                    return new ShapedMap(KeyShape.intern(keys), values);
+                }
+                default:
+                    throw new IllegalStateException("Corrupted snapshot: unknown tag " + tag);
+            }
+        }
+
+        private static String readString(ByteBuffer in) {
+            int length = in.getInt();
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package org.example;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * What a Sorter compares, for each element of a list: we follow the fields, upper-case
+ * and split out the numbers once per element instead of once per comparison.
+ * compare(i, j) then orders elements i and j like Sorter.compare would order the values.
+ *
+ * Get them from Sorter.keysOf. They don't change if the list does.
+ * If the Sorter has another one to break ties, so do we ("then").
+ *
+ * Big lists are done in parallel: the keys, and the merge sort on the fork-join pool.
+ * The result is the same as sorting on one thread, down to the order of ties.
+ */
+public class SortKeys {
+    // Below this, insertion sort is faster than splitting further.
+    private static final int INSERTION_SORT_SIZE = 32;
+    // Below this, one thread does it faster than splitting the work.
+    static final int PARALLEL_MIN = 1 << 14;
+
+    // Which kind of key each element has. Elements of different ranks compare by rank.
+    // It's group * 4 + kind:
+    // group is 0 for maps, 1 for other values, 2 for nulls (when sorting maps by a field; maps go first),
+    // kind is 0, 1, 2 for numbers, strings, anything else (see Sorter.kind), 3 for null.
+    private final byte[] ranks;
+    // The number, for numbers.
+    private final double[] numbers;
+    // The (maybe upper-cased) string, or when parsing numbers the Object[] from Sorter.splitNumbers.
+    private final Object[] texts;
+    private final boolean reverse;
+    private final boolean parseNumbers;
+    private final @Nullable SortKeys then;
+    // Set by stop: a sort that's still running gives up.
+    private volatile boolean stopped = false;
+
+    // mapKeys: for sorters that sort by map keys, use those instead of the values.
+    SortKeys(@NotNull Sorter sorter, @NotNull List<?> values, @Nullable List<String> mapKeys) {
+        Sorter next = sorter.getThen();
+        this.then = (null == next ? null : new SortKeys(next, values, mapKeys));
+        if (sorter.getSortkeys() && null != mapKeys) values = mapKeys;
+        int size = values.size();
+        this.ranks = new byte[size];
+        this.numbers = new double[size];
+        this.texts = new Object[size];
+        this.reverse = sorter.getReverse();
+        this.parseNumbers = sorter.getParseNumbers();
+        boolean ignoreCase = sorter.getIgnoreCase();
+        List<String> fields = sorter.getFields();
+        int column = -1;
+        if (values instanceof ColumnarList && !fields.isEmpty()) {
+            column = ((ColumnarList) values).columnIndex(fields.get(0));
+        }
+        IntStream elements = IntStream.range(0, size);
+        if (size >= PARALLEL_MIN) elements = elements.parallel();
+        // each element only writes its own slots, so they don't get in each other's way.
+        final int col = column;
+        final boolean byField = !fields.isEmpty();
+        final List<?> keyed = values;
+        elements.forEach(i -> setRank(i, sorter, keyed, byField, col, ignoreCase));
+    }
+
+    private void setRank(int i, Sorter sorter, List<?> values, boolean byField, int column, boolean ignoreCase) {
+        int group;
+        Object value;
+        if (column >= 0) {
+            // Read the field straight from the column, no need to build the maps.
+            group = 0;
+            value = sorter.getFinalField(((ColumnarList) values).getField(i, column), 1);
+        } else {
+            value = values.get(i);
+            group = 1;
+            if (byField) {
+                if (null == value) {
+                    group = 2;
+                } else if (value instanceof Map) {
+                    group = 0;
+                    value = sorter.getFinalField(value, 0);
+                }
+            }
+        }
+        ranks[i] = (byte) (group * 4 + setKey(i, value, ignoreCase));
+    }
+
+    // Fill in numbers[i] or texts[i], return the kind.
+    private int setKey(int i, @Nullable Object value, boolean ignoreCase) {
+        if (null == value) return 3;
+        if (parseNumbers) {
+            Object[] parts;
+            if (value instanceof Number) {
+                parts = new Object[] {((Number) value).doubleValue()};
+            } else if (value instanceof String) {
+                ArrayList<Object> split = Sorter.splitNumbers((String) value);
+                parts = split.toArray();
+                if (ignoreCase) {
+                    for (int p = 0; p < parts.length; p++) {
+                        if (parts[p] instanceof String) parts[p] = ((String) parts[p]).toUpperCase();
+                    }
+                }
+            } else {
+                String s = value.toString();
+                parts = new Object[] {ignoreCase ? s.toUpperCase() : s};
+            }
+            texts[i] = parts;
+            return 0;
+        }
+        int kind = Sorter.kind(value);
+        if (kind == 0) {
+            numbers[i] = ((Number) value).doubleValue();
+        } else if (kind == 1) {
+            texts[i] = ignoreCase ? ((String) value).toUpperCase() : value;
+        }
+        // reverse flips the order between kinds too.
+        return reverse ? 2 - kind : kind;
+    }
+
+    /** How many elements we have keys for. */
+    public int size() {
+        return ranks.length;
+    }
+
+    /** Compare elements i and j of the list, like Sorter.compare. */
+    public int compare(int i, int j) {
+        int ret = compareHere(i, j);
+        if (0 == ret && null != then) return then.compare(i, j);
+        return ret;
+    }
+
+    // compare, without the tie breakers.
+    private int compareHere(int i, int j) {
+        int r = ranks[i];
+        if (r != ranks[j]) return r < ranks[j] ? -1 : 1;
+        if (parseNumbers) {
+            if ((r & 3) == 3) return 0;
+            return compareParts((Object[]) texts[i], (Object[]) texts[j]);
+        }
+        int kind = r & 3;
+        if (reverse) kind = 2 - kind;
+        int ret;
+        if (kind == 0) {
+            ret = Double.compare(numbers[i], numbers[j]);
+        } else if (kind == 1) {
+            ret = ((String) texts[i]).compareTo((String) texts[j]);
+        } else {
+            return 0;
+        }
+        return reverse ? -ret : ret;
+    }
+
+    // Same as Sorter.innerCompare on the translated values.
+    private int compareParts(Object[] l1, Object[] l2) {
+        if (l1.length == 0) {
+            // empty list comes first
+            return l2.length == 0 ? 0 : -1;
+        }
+        for (int i = 0; i < l1.length; i++) {
+            // equal up to this point, shorter wins.
+            if (l2.length <= i) return 1;
+            Object p1 = l1[i];
+            Object p2 = l2[i];
+            int c;
+            if (p1 instanceof String && p2 instanceof String) {
+                c = ((String) p1).compareTo((String) p2);
+            } else if (p1 instanceof Double && p2 instanceof Double) {
+                c = Double.compare((Double) p1, (Double) p2);
+            } else {
+                // numbers before strings
+                c = (p1 instanceof Double) ? -1 : 1;
+            }
+            if (c != 0) return reverse ? -c : c;
+        }
+        return l1.length == l2.length ? 0 : -1;
+    }
+
+    /**
+     * Those element numbers, in sorted order. Stable: elements that compare equal
+     * stay in the order they were given.
+     */
+    public int[] sort(int[] order) {
+        return sort(order, order.length >= PARALLEL_MIN && ForkJoinPool.getCommonPoolParallelism() > 1);
+    }
+
+    /** Make a sort in progress (on another thread) give up with a CancellationException. */
+    public void stop() {
+        stopped = true;
+    }
+
+    // Accessible for tests.
+    int[] sort(int[] order, boolean parallel) {
+        int[] ret = order.clone();
+        int[] tmp = new int[ret.length];
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(new SortTask(ret, tmp, 0, ret.length));
+        } else {
+            mergeSort(ret, tmp, 0, ret.length);
+        }
+        return ret;
+    }
+
+    /**
+     * The first k of sort(order), without sorting the rest: we keep the k smallest
+     * we've seen so far in a heap, and most elements just get compared to its top.
+     */
+    public int[] head(int[] order, int k) {
+        k = Math.min(k, order.length);
+        if (k == 0) return new int[0];
+        // positions in "order", the one that'd be sorted last at the top.
+        // Ties go by position, like in the stable sort.
+        int[] heap = new int[k];
+        for (int p = 0; p < k; p++) {
+            heap[p] = p;
+            siftUp(heap, p, order);
+        }
+        for (int p = k; p < order.length; p++) {
+            // later positions lose ties, so only strictly smaller ones get in.
+            if (compare(order[p], order[heap[0]]) < 0) {
+                heap[0] = p;
+                siftDown(heap, k, order);
+            }
+        }
+        // back in their original order, so sorting them keeps ties as they were.
+        Arrays.sort(heap);
+        for (int i = 0; i < k; i++) heap[i] = order[heap[i]];
+        return sort(heap, false);
+    }
+
+    // For head: true if position p of "order" comes after position q in the sorted result.
+    private boolean after(int[] order, int p, int q) {
+        int c = compare(order[p], order[q]);
+        return c > 0 || (c == 0 && p > q);
+    }
+
+    private void siftUp(int[] heap, int i, int[] order) {
+        while (i > 0) {
+            int dad = (i - 1) >>> 1;
+            if (!after(order, heap[i], heap[dad])) return;
+            int t = heap[i]; heap[i] = heap[dad]; heap[dad] = t;
+            i = dad;
+        }
+    }
+
+    private void siftDown(int[] heap, int size, int[] order) {
+        int i = 0;
+        while (true) {
+            int kid = 2 * i + 1;
+            if (kid >= size) return;
+            if (kid + 1 < size && after(order, heap[kid + 1], heap[kid])) kid++;
+            if (!after(order, heap[kid], heap[i])) return;
+            int t = heap[i]; heap[i] = heap[kid]; heap[kid] = t;
+            i = kid;
+        }
+    }
+
+    // mergeSort, with both halves sorted at the same time, then merged in pieces.
+    private class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] a;
+        private final int[] tmp;
+        private final int from;
+        private final int to;
+
+        SortTask(int[] a, int[] tmp, int from, int to) {
+            this.a = a;
+            this.tmp = tmp;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < PARALLEL_MIN) {
+                mergeSort(a, tmp, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SortTask(a, tmp, from, mid), new SortTask(a, tmp, mid, to));
+            if (compare(a[mid - 1], a[mid]) <= 0) {
+                // already in order
+                return;
+            }
+            System.arraycopy(a, from, tmp, from, to - from);
+            new MergeTask(tmp, a, from, mid, mid, to, from).compute();
+        }
+    }
+
+    // Merge the sorted src[l0, l1) and src[r0, r1) into dst, starting at "out".
+    // Big merges are split around the middle of the longer side, which lands exactly
+    // where the one-thread merge would put it, so each piece can be merged on its own.
+    private class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] src;
+        private final int[] dst;
+        private final int l0, l1, r0, r1, out;
+
+        MergeTask(int[] src, int[] dst, int l0, int l1, int r0, int r1, int out) {
+            this.src = src;
+            this.dst = dst;
+            this.l0 = l0;
+            this.l1 = l1;
+            this.r0 = r0;
+            this.r1 = r1;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if ((l1 - l0) + (r1 - r0) < PARALLEL_MIN) {
+                mergeInto(src, dst, l0, l1, r0, r1, out);
+                return;
+            }
+            int lm, rm;
+            if (l1 - l0 >= r1 - r0) {
+                lm = (l0 + l1) >>> 1;
+                // what's on the right goes after it unless it's smaller.
+                int pivot = src[lm];
+                int lo = r0, hi = r1;
+                while (lo < hi) {
+                    int m = (lo + hi) >>> 1;
+                    if (compare(src[m], pivot) < 0) lo = m + 1; else hi = m;
+                }
+                rm = lo;
+                dst[out + (lm - l0) + (rm - r0)] = pivot;
+                invokeAll(new MergeTask(src, dst, l0, lm, r0, rm, out),
+                        new MergeTask(src, dst, lm + 1, l1, rm, r1, out + (lm - l0) + (rm - r0) + 1));
+            } else {
+                rm = (r0 + r1) >>> 1;
+                // what's on the left goes before it unless it's bigger.
+                int pivot = src[rm];
+                int lo = l0, hi = l1;
+                while (lo < hi) {
+                    int m = (lo + hi) >>> 1;
+                    if (compare(src[m], pivot) <= 0) lo = m + 1; else hi = m;
+                }
+                lm = lo;
+                dst[out + (lm - l0) + (rm - r0)] = pivot;
+                invokeAll(new MergeTask(src, dst, l0, lm, r0, rm, out),
+                        new MergeTask(src, dst, lm, l1, rm + 1, r1, out + (lm - l0) + (rm - r0) + 1));
+            }
+        }
+    }
+
+    // Merge the sorted src[l0, l1) and src[r0, r1) into dst, starting at "out". On ties the left goes first.
+    private void mergeInto(int[] src, int[] dst, int l0, int l1, int r0, int r1, int out) {
+        while (l0 < l1 && r0 < r1) {
+            if (compare(src[l0], src[r0]) <= 0) {
+                dst[out++] = src[l0++];
+            } else {
+                dst[out++] = src[r0++];
+            }
+        }
+        while (l0 < l1) dst[out++] = src[l0++];
+        while (r0 < r1) dst[out++] = src[r0++];
+    }
+
+    // Sort a[from, to), using tmp as scratch space.
+    private void mergeSort(int[] a, int[] tmp, int from, int to) {
+        if (to - from <= INSERTION_SORT_SIZE) {
+            insertionSort(a, from, to);
+            return;
+        }
+        if (stopped) throw new CancellationException();
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid);
+        mergeSort(a, tmp, mid, to);
+        merge(a, tmp, from, mid, to);
+    }
+
+    private void insertionSort(int[] a, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int x = a[i];
+            int j = i - 1;
+            while (j >= from && compare(a[j], x) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = x;
+        }
+    }
+
+    // Merge the sorted a[from, mid) and a[mid, to). On ties the first half goes first.
+    private void merge(int[] a, int[] tmp, int from, int mid, int to) {
+        if (compare(a[mid - 1], a[mid]) <= 0) {
+            // already in order
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, mid - from);
+        int left = from, right = mid, pos = from;
+        while (left < mid && right < to) {
+            if (compare(tmp[left], a[right]) <= 0) {
+                a[pos++] = tmp[left++];
+            } else {
+                a[pos++] = a[right++];
+            }
+        }
+        while (left < mid) a[pos++] = tmp[left++];
+    }
+}
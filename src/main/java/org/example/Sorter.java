@@ -7,6 +7,8 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 /** Instructions for how to sort. Conceptually immutable.
+ * A Sorter can have another one to break ties ("by status, then by latency"),
+ * each with its own field and settings. See then().
  */
 public class Sorter implements Comparator<Object> {
 
@@ -17,14 +19,41 @@ public class Sorter implements Comparator<Object> {
     private final @NotNull ArrayList<String> fields;
     private final boolean sortKeys;
     private @Nullable Map<String, ArrayList<Object>> numberified;
+    // what we sort by when this one says two things are equal, if anything.
+    private final @Nullable Sorter then;
 
     public Sorter(boolean reverse, boolean ignoreCase, boolean parseNumbers, @NotNull List<String> field, boolean sortKeys) {
+        this(reverse, ignoreCase, parseNumbers, field, sortKeys, null);
+    }
+
+    private Sorter(boolean reverse, boolean ignoreCase, boolean parseNumbers, @NotNull List<String> field, boolean sortKeys, @Nullable Sorter then) {
         this.reverse = reverse;
         this.ignoreCase = ignoreCase;
         this.parseNumbers = parseNumbers;
         this.fields = new ArrayList<>(field);
         if (parseNumbers) numberified = new HashMap<>();
         this.sortKeys = sortKeys;
+        this.then = then;
+    }
+
+    /** Sort by the first one, then those that are equal by the second one, and so on. */
+    public static @NotNull Sorter byEach(@NotNull List<Sorter> keys) {
+        if (keys.isEmpty()) throw new IllegalArgumentException("nothing to sort by");
+        Sorter ret = keys.get(0);
+        for (int i = 1; i < keys.size(); i++) {
+            ret = ret.then(keys.get(i));
+        }
+        return ret;
+    }
+
+    /** The same as us, except that things we find equal are then sorted by "next". */
+    public @NotNull Sorter then(@NotNull Sorter next) {
+        return new Sorter(reverse, ignoreCase, parseNumbers, fields, sortKeys, null == then ? next : then.then(next));
+    }
+
+    /** What breaks our ties, or null. */
+    public @Nullable Sorter getThen() {
+        return then;
     }
 
     @Override
@@ -58,12 +87,45 @@ public class Sorter implements Comparator<Object> {
             sb.append("num");
         }
         sb.append(")");
+        if (null != then) {
+            sb.append(" then ");
+            sb.append(then);
+        }
         return sb.toString();
     }
 
     // Removes intermediate sorting data
     public void pack() {
         this.numberified = null;
+        if (null != then) then.pack();
+    }
+
+    public boolean getReverse() {
+        return this.reverse;
+    }
+
+    public boolean getIgnoreCase() {
+        return this.ignoreCase;
+    }
+
+    public boolean getParseNumbers() {
+        return this.parseNumbers;
+    }
+
+    /**
+     * Each value's sort key, worked out once. Sorting with them gives the same
+     * order as sorting the values with this comparator, only faster.
+     */
+    public @NotNull SortKeys keysOf(@NotNull List<?> values) {
+        return new SortKeys(this, values, null);
+    }
+
+    /**
+     * The sort keys for the values of a map. Where we sort by keys (getSortkeys),
+     * we use mapKeys, the key of each of those values.
+     */
+    public @NotNull SortKeys keysOf(@NotNull List<?> values, @NotNull List<String> mapKeys) {
+        return new SortKeys(this, values, mapKeys);
     }
 
     /** if true, we're sorting by JSON map keys */
@@ -73,8 +135,11 @@ public class Sorter implements Comparator<Object> {
 
     @Override
     public int compare(Object o1, Object o2) {
-        if (!fields.isEmpty()) return compareMaps(o1, o2);
-        return innerCompare(o1, o2);
+        int ret;
+        if (!fields.isEmpty()) ret = compareMaps(o1, o2);
+        else ret = innerCompare(o1, o2);
+        if (0 == ret && null != then) return then.compare(o1, o2);
+        return ret;
     }
 
     // compare when we don't need to look inside maps
@@ -132,28 +197,41 @@ public class Sorter implements Comparator<Object> {
         if (o1 instanceof Map && o2 instanceof Map) {
             Map m1 = (Map)o1;
             Map m2 = (Map)o2;
-            Object got1 = getFinalField(m1);
-            Object got2 = getFinalField(m2);
+            Object got1 = getFinalField(m1, 0);
+            Object got2 = getFinalField(m2, 0);
             return innerCompare(got1, got2);
         }
         // we should get there.
         return 0;
     }
 
-    private Object getFinalField(Map m) {
-        Object sofar = m;
-        for (String f : fields) {
+    /**
+     * Same as compareMaps for two maps, but given the value of the first field in each.
+     * For when we can get that value without building the map (see ColumnarList).
+     * Doesn't look at getThen().
+     */
+    public int compareFirstFields(@Nullable Object field1, @Nullable Object field2) {
+        return innerCompare(getFinalField(field1, 1), getFinalField(field2, 1));
+    }
+
+    /** The path of the field we compare maps by, or empty if we're not comparing maps. */
+    public List<String> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    // Follow the fields, starting from fields[firstField].
+    Object getFinalField(Object sofar, int firstField) {
+        for (int i=firstField; i<fields.size(); i++) {
             if (!(sofar instanceof Map)) return null;
-            if (null==sofar) return null;
             Map map = (Map)sofar;
-            sofar = map.get(f);
+            sofar = map.get(fields.get(i));
         }
         return sofar;
     }
 
     // not parsing numbers into stuff
     public int compareObjects(@NotNull Object o1, @NotNull Object o2) {
-        // Strings
+        int ret;
         if (o1 instanceof String && o2 instanceof String) {
             String s1 = (String)o1;
             String s2 = (String)o2;
@@ -161,114 +239,85 @@ public class Sorter implements Comparator<Object> {
                 s1 = s1.toUpperCase();
                 s2 = s2.toUpperCase();
             }
-            int ret = s1.compareTo(s2);
-            if (reverse) ret = -ret;
-            return ret;
-        }
-        // String vs number
-        if (o1 instanceof String && (o2 instanceof Integer || o2 instanceof Double)) {
-            return reverse?-1:1;
-        }
-        if ((o1 instanceof Integer || o1 instanceof Double) && o2 instanceof String) {
-            return reverse?1:-1;
-        }
-        // Numbers
-        if (o1 instanceof Integer && o2 instanceof Integer) {
-            Integer i1 = (Integer)o1;
-            Integer i2 = (Integer)o2;
-            int ret = i1.compareTo(i2);
-            if (reverse) ret = -ret;
-            return ret;
-        }
-        if (o1 instanceof Double && o2 instanceof Double) {
-            Double d1 = (Double)o1;
-            Double d2 = (Double)o2;
-            int ret = d1.compareTo(d2);
-            if (reverse) ret = -ret;
-            return ret;
-        }
-        Double d1 = null;
-        if (o1 instanceof Double) {
-            d1 = (Double)o1;
-        } else if (o1 instanceof Integer) {
-            Integer i1 = (Integer)o1;
-            d1 = Double.valueOf(i1);
-        } else {
-            // Don't know how to handle this type
-            return 0;
-        }
-        Double d2 = null;
-        if (o2 instanceof Double) {
-            d2 = (Double)o2;
-        } else if (o2 instanceof Integer) {
-            Integer i2 = (Integer)o2;
-            d2 = Double.valueOf(i2);
+            ret = s1.compareTo(s2);
+        } else if (o1 instanceof Integer && o2 instanceof Integer) {
+            ret = ((Integer)o1).compareTo((Integer)o2);
+        } else if (o1 instanceof Number && o2 instanceof Number) {
+            // Integer vs Double, or the Longs Jackson uses for big numbers.
+            ret = Double.compare(((Number)o1).doubleValue(), ((Number)o2).doubleValue());
         } else {
-            // Don't know how to handle this type
-            return 0;
+            // Different kinds: numbers go first, then strings, then anything else.
+            ret = Integer.compare(kind(o1), kind(o2));
         }
-        int ret = d1.compareTo(d2);
-        if (reverse) ret=-ret;
+        if (reverse) ret = -ret;
         return ret;
     }
 
+    // For compareObjects, the order between different types. Two booleans, two maps, etc. are "equal".
+    static int kind(@NotNull Object o) {
+        if (o instanceof Number) return 0;
+        if (o instanceof String) return 1;
+        return 2;
+    }
+
     // Accessible for tests.
     /** "Untitled (2)" -> ["Untitled (", 2.0, ")"] **/
     ArrayList<Object> translate(Object o) {
+        if (o instanceof String) {
+            String s = (String)o;
+            if (null==numberified) numberified = new HashMap<>();
+            ArrayList<Object> ret = numberified.get(s);
+            if (null==ret) {
+                ret = splitNumbers(s);
+                numberified.put(s, ret);
+            }
+            return ret;
+        }
         ArrayList<Object> ret = new ArrayList<>();
-        if (o instanceof Double) {
-            Double d = (Double)o;
-            ret.add(d);
+        if (o instanceof Number) {
+            ret.add(((Number)o).doubleValue());
             return ret;
         }
-        if (o instanceof Integer) {
-            Integer i = (Integer)o;
-            ret.add(Double.valueOf(i));
+        // we're not set up to compare maps or lists...
+        ret.add(o.toString());
+        return ret;
+    }
+
+    /** The pieces of the string: alternating text and numbers (as Doubles). */
+    static ArrayList<Object> splitNumbers(String s) {
+        ArrayList<Object> ret = new ArrayList<>();
+        char[] chars = new char[s.length()];
+        s.getChars(0, s.length(), chars, 0);
+        if (chars.length==0) {
             return ret;
         }
-        if (o instanceof String) {
-            String s = (String)o;
-            if (null==numberified) numberified = new HashMap<>();
-            if (numberified.containsKey(s)) return numberified.get(s);
-            char[] chars = new char[s.length()];
-            s.getChars(0, s.length(), chars, 0);
-            if (chars.length==0) {
-                return ret;
-            }
-            StringBuilder stringBuilder = new StringBuilder();
-            double numberBuilder = 0;
-            boolean buildingANumber = chars[0] >= '0' && chars[0] <= '9';
-            for (int i = 0; i < chars.length; i++) {
-                char c = chars[i];
-                if (c >= '0' && c <= '9') {
-                    if (buildingANumber) {
-                        numberBuilder = numberBuilder * 10.0 + (c - '0');
-                    } else {
-                        ret.add(stringBuilder.toString());
-                        buildingANumber = true;
-                        numberBuilder = (c - '0');
-                    }
+        StringBuilder stringBuilder = new StringBuilder();
+        double numberBuilder = 0;
+        boolean buildingANumber = chars[0] >= '0' && chars[0] <= '9';
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                if (buildingANumber) {
+                    numberBuilder = numberBuilder * 10.0 + (c - '0');
                 } else {
-                    if (buildingANumber) {
-                        ret.add(numberBuilder);
-                        buildingANumber = false;
-                        stringBuilder = new StringBuilder();
-                    }
-                    stringBuilder.append(c);
+                    ret.add(stringBuilder.toString());
+                    buildingANumber = true;
+                    numberBuilder = (c - '0');
                 }
-            }
-            if (buildingANumber) {
-                ret.add(numberBuilder);
             } else {
-                ret.add(stringBuilder.toString());
-            }
-            if (null!=numberified) {
-                numberified.put(s, ret);
+                if (buildingANumber) {
+                    ret.add(numberBuilder);
+                    buildingANumber = false;
+                    stringBuilder = new StringBuilder();
+                }
+                stringBuilder.append(c);
             }
-            return ret;
         }
-        // we're not set up to compare maps or lists...
-        ret.add(o.toString());
+        if (buildingANumber) {
+            ret.add(numberBuilder);
+        } else {
+            ret.add(stringBuilder.toString());
+        }
         return ret;
     }
 }
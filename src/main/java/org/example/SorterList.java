@@ -10,14 +10,28 @@ public class SorterList<T> implements Comparator<Integer> {
 
     private final @NotNull Sorter sorter;
     private final @NotNull List<T> objects;
+    // If the objects are stored by column, the column we sort by. Otherwise -1.
+    private final int column;
 
     public SorterList(@NotNull Sorter s, @NotNull List<T> objects) {
         this.sorter = s;
         this.objects = objects;
+        int col = -1;
+        if (objects instanceof ColumnarList && !s.getFields().isEmpty()) {
+            col = ((ColumnarList) objects).columnIndex(s.getFields().get(0));
+        }
+        this.column = col;
     }
 
     @Override
     public int compare(Integer o1, Integer o2) {
+        if (column >= 0) {
+            // Read the field straight from the column, no need to build the maps.
+            ColumnarList columns = (ColumnarList) objects;
+            int ret = sorter.compareFirstFields(columns.getField(o1, column), columns.getField(o2, column));
+            if (0 != ret || null == sorter.getThen()) return ret;
+            return sorter.getThen().compare(objects.get(o1), objects.get(o2));
+        }
         return sorter.compare(objects.get(o1), objects.get(o2));
     }
 }
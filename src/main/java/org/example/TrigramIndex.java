@@ -0,0 +1,283 @@
+package org.example;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which records (the elements of a top-level list) contain which three-letter sequences,
+ * anywhere in their keys, values or the annotations we'd add to them.
+ * Something that contains "needle" has "NEE", "EED", "EDL" and "DLE", so a search
+ * for it only needs to look at the records that have all four: usually a lot fewer
+ * than all of them.
+ *
+ * It's built on its own thread (see start) from the values as they were loaded, since
+ * it takes about as long as reading the file. Until it's ready, or for the records
+ * added or changed since, searches look everywhere like before.
+ *
+ * Letters are compared by fold(), so the same index works whether or not we ignore case.
+ */
+public class TrigramIndex {
+    // Growable list of record numbers, in increasing order.
+    private static class IntList {
+        int[] items = new int[2];
+        int size = 0;
+
+        void add(int record) {
+            // each record only once.
+            if (size > 0 && items[size - 1] == record) return;
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = record;
+        }
+    }
+
+    private final List<Object> values;
+    private final int recordCount;
+    // trigram (see trigram) -> the records that have it. Only the indexing thread
+    // touches it until ready is set.
+    private final HashMap<Long, IntList> postings = new HashMap<>();
+    private volatile boolean ready = false;
+    private volatile boolean stopped = false;
+    // Records that changed since we indexed them. Only touched by the UI thread.
+    private final BitSet changed = new BitSet();
+
+    private TrigramIndex(List<Object> values) {
+        this.values = values;
+        this.recordCount = values.size();
+    }
+
+    /**
+     * Start indexing these records in the background. The list must not change while
+     * we read it: to add more, make a new list (like JsonNodeList.appendValues does).
+     */
+    public static @NotNull TrigramIndex start(@NotNull List<Object> values) {
+        TrigramIndex ret = new TrigramIndex(values);
+        Thread t = new Thread(ret::build, "trigram index");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+        return ret;
+    }
+
+    /** Index those records right away, on this thread. */
+    public static @NotNull TrigramIndex build(@NotNull List<Object> values) {
+        TrigramIndex ret = new TrigramIndex(values);
+        ret.build();
+        return ret;
+    }
+
+    /** True once the index can be used. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Stop indexing, we won't need it. */
+    public void stop() {
+        stopped = true;
+    }
+
+    /** How many records are indexed. The ones after that always might match. */
+    public int recordCount() {
+        return recordCount;
+    }
+
+    /** The record changed since it was loaded, so what we indexed for it doesn't count anymore. */
+    public void recordChanged(int record) {
+        if (record >= 0 && record < recordCount) changed.set(record);
+    }
+
+    /**
+     * The records that might contain all these strings, or null if we can't tell
+     * (not ready yet, or nothing long enough to look up): then every one might.
+     * Records at recordCount() or after aren't in the set, but might too.
+     */
+    public @Nullable BitSet candidates(@NotNull List<String> fragments) {
+        if (!ready) return null;
+        ArrayList<IntList> lists = new ArrayList<>();
+        boolean any = false;
+        for (String fragment : fragments) {
+            for (int i = 0; i + 3 <= fragment.length(); i++) {
+                any = true;
+                IntList list = postings.get(trigram(fragment, i));
+                if (null == list) {
+                    // nothing has it.
+                    return (BitSet) changed.clone();
+                }
+                lists.add(list);
+            }
+        }
+        if (!any) return null;
+        // start with the rarest, that's the smallest set.
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        BitSet ret = toBitSet(lists.get(0));
+        for (int i = 1; i < lists.size() && !ret.isEmpty(); i++) {
+            ret.and(toBitSet(lists.get(i)));
+        }
+        ret.or(changed);
+        return ret;
+    }
+
+    /**
+     * Strings that anything this regular expression finds has to contain (in the same case,
+     * unless the search ignores case). Empty if we can't tell.
+     * We only look at plain letters outside of groups and brackets, and give up on
+     * anything fancier: fewer fragments means more candidates, but never missing one.
+     */
+    public static @NotNull List<String> requiredLiterals(@NotNull String regex) {
+        ArrayList<String> ret = new ArrayList<>();
+        // alternatives mean nothing is required; "(?" can change what the rest means.
+        if (regex.indexOf('|') >= 0 || regex.contains("(?")) return ret;
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i++);
+            if (depth > 0) {
+                // what's in a group may be optional or repeated, skip it.
+                if (c == '\\') i++;
+                else if (c == '[') i = skipClass(regex, i);
+                else if (c == '(') depth++;
+                else if (c == ')') depth--;
+                continue;
+            }
+            switch (c) {
+                case '\\':
+                    if (i >= regex.length()) return new ArrayList<>();
+                    char escaped = regex.charAt(i++);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        // \d, \x41, \p{L}, \Q...\E, back references...: we don't try.
+                        if ("QxuNpPkc0".indexOf(escaped) >= 0) return new ArrayList<>();
+                        endRun(run, ret);
+                    } else {
+                        run.append(escaped);
+                    }
+                    break;
+                case '(':
+                    endRun(run, ret);
+                    depth++;
+                    break;
+                case '[':
+                    endRun(run, ret);
+                    i = skipClass(regex, i);
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // the letter before may not be there at all.
+                    if (run.length() > 0) run.setLength(run.length() - 1);
+                    endRun(run, ret);
+                    if (c == '{') {
+                        while (i < regex.length() && regex.charAt(i) != '}') i++;
+                        i++;
+                    }
+                    break;
+                case '+':
+                    // the letter before is there, but maybe repeated.
+                    endRun(run, ret);
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                case ')':
+                case ']':
+                case '}':
+                    endRun(run, ret);
+                    break;
+                default:
+                    run.append(c);
+            }
+        }
+        endRun(run, ret);
+        return ret;
+    }
+
+    // Where the character class that starts just before "i" ends (they can nest).
+    // "[]a]" and "[^]a]" include a ']'.
+    private static int skipClass(String regex, int i) {
+        if (i < regex.length() && regex.charAt(i) == '^') i++;
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+        while (i < regex.length()) {
+            char c = regex.charAt(i++);
+            if (c == '\\') i++;
+            else if (c == '[') i = skipClass(regex, i);
+            else if (c == ']') break;
+        }
+        return i;
+    }
+
+    private static void endRun(StringBuilder run, List<String> into) {
+        if (run.length() >= 3) into.add(run.toString());
+        run.setLength(0);
+    }
+
+    private void build() {
+        for (int record = 0; record < recordCount; record++) {
+            if (stopped) return;
+            addValue(record, values.get(record), null);
+        }
+        ready = true;
+    }
+
+    // What the search would look at in that value: keys, values, and annotations.
+    private void addValue(int record, @Nullable Object value, @Nullable String key) {
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                String k = String.valueOf(e.getKey());
+                addText(record, k);
+                addValue(record, e.getValue(), k);
+            }
+        } else if (value instanceof List) {
+            for (Object o : (List<?>) value) {
+                addValue(record, o, null);
+            }
+        } else {
+            addText(record, (null == value ? "null" : value.toString()));
+            if (null != key) {
+                String annotation = JsonNodeValue.autoAnnotation(key, value);
+                if (null != annotation) addText(record, annotation);
+            }
+        }
+    }
+
+    private void addText(int record, String text) {
+        boolean plain = true;
+        for (int i = 0; i < text.length(); i++) {
+            if (i + 3 <= text.length()) {
+                postings.computeIfAbsent(trigram(text, i), _k -> new IntList()).add(record);
+            }
+            if (text.charAt(i) >= 128) plain = false;
+        }
+        if (!plain) {
+            // A search that ignores case compares in upper case, and that can
+            // change the letters ("ß" becomes "SS"), so index that too.
+            String upper = text.toUpperCase();
+            if (!upper.equals(text)) {
+                for (int i = 0; i + 3 <= upper.length(); i++) {
+                    postings.computeIfAbsent(trigram(upper, i), _k -> new IntList()).add(record);
+                }
+            }
+        }
+    }
+
+    // The three letters at "at", folded, in one number.
+    private static long trigram(String s, int at) {
+        return ((long) fold(s.charAt(at)) << 32) | ((long) fold(s.charAt(at + 1)) << 16) | fold(s.charAt(at + 2));
+    }
+
+    // Letters that are the same ignoring case fold to the same thing.
+    private static char fold(char c) {
+        return Character.toUpperCase(Character.toLowerCase(c));
+    }
+
+    private static BitSet toBitSet(IntList list) {
+        BitSet ret = new BitSet();
+        for (int i = 0; i < list.size; i++) ret.set(list.items[i]);
+        return ret;
+    }
+}
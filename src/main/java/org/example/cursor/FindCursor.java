@@ -23,6 +23,35 @@ public class FindCursor implements MultiCursor {
     // Note: we have to always search in at least one of them.
     protected boolean inValue;
     protected boolean ignoreComments;
+    // What matches in indexedRoot, worked out once and kept until the tree changes
+    // (see JsonNode.getTreeEpoch). matchSet has all of them, matchList only has the
+    // ones addAllNodes reports, in display order (see JsonNode.compareDisplayOrder)
+    // so next/prev can binary search it. The others are in aggregates.
+    private @Nullable JsonNode indexedRoot = null;
+    private int indexedEpoch;
+    private final Set<JsonNode> matchSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ArrayList<JsonNode> matchList = new ArrayList<>();
+    private final ArrayList<JsonNode> aggregateMatches = new ArrayList<>();
+
+    // The search in progress, if any (see startSearch). Until it's done the lists
+    // above only have what we found so far.
+    private boolean searching = false;
+    // Where we are in the tree: for each level, the next child to look at,
+    // and whether that level is inside an aggregate.
+    private final ArrayList<JsonNodeIterator<?>> toVisit = new ArrayList<>();
+    private final ArrayList<Boolean> toVisitInAggregate = new ArrayList<>();
+    // When narrowing down a previous search, we only look at what it found:
+    // first the ones from its matchList, then the ones in aggregates.
+    private @Nullable List<JsonNode> candidates = null;
+    private int candidatesNotInAggregates;
+    private int nextCandidate;
+    // When the root list has a text index, the elements it says can match (in display
+    // order). We look at them one by one after the root and its aggregate.
+    private @Nullable int[] recordsToVisit = null;
+    private int nextRecord;
+    // When the root is a list: how many of its elements the search covers. If more are
+    // added at the end, we only need to look at those (see refresh).
+    private int indexedSize;
 
 
     /**
@@ -103,166 +132,257 @@ public class FindCursor implements MultiCursor {
     public boolean selects(Cursor primary, @NotNull Cursor underTest) {
         if (null==underTest) return false;
         JsonNode node = underTest.getData();
-        return matches(node);
+        if (null==node) return false;
+        JsonNode root = node.getRoot();
+        if (root!=indexedRoot || indexedEpoch!=JsonNode.getTreeEpoch()) {
+            refresh(root);
+            // a small tree is done right away, a big one goes on between frames (see findSome).
+            findSome(0);
+        }
+        // highlight what we found so far.
+        return matchSet.contains(node);
     }
 
     @Override
     public void addAllNodes(Cursor primaryCur, @NotNull List<JsonNode> list) {
         JsonNode primary = primaryCur.getData();
-        JsonNode root = primaryCur.getData().getRoot();
-        innerAddAllNodes(primary, root, list);
+        updateIndex(primary.getRoot());
+        for (JsonNode match : matchList) {
+            if (match!=primary) list.add(match);
+        }
     }
 
-    private void innerAddAllNodes(JsonNode primary, JsonNode cur, @NotNull List<JsonNode> list) {
-        if (matches(cur) && cur!=primary) list.add(cur);
-
-        if (cur instanceof JsonNodeList) {
-            JsonNodeList nl = (JsonNodeList)cur;
-            for (int i=0; i<nl.size(); i++) {
-                innerAddAllNodes(primary, nl.get(i), list);
-            }
-        } else if (cur instanceof JsonNodeMap) {
-            JsonNodeMap nm = (JsonNodeMap)cur;
-            for (String k : nm.getKeysInOrder()) {
-                innerAddAllNodes(primary, nm.getChild(k), list);
-            }
-        }
+    /** How many places match in this tree. */
+    public int countMatches(JsonNode root) {
+        updateIndex(root);
+        return matchList.size();
     }
 
-    @Override
-    public @Nullable Cursor nextCursor(Cursor primaryCur) {
-        List<DescentStep> atCursorList = primaryCur.asListOfSteps();
-        DescentStep[] atCursor = atCursorList.toArray(new DescentStep[0]);
-        JsonNode root = primaryCur.getData().getRoot();
-        JsonNode nextGuy = findFirstAfter(root, atCursor, 0);
-        if (null==nextGuy) return null;
-        return nextGuy.asCursor();
+    /**
+     * How many cursors there are with that primary, like atAnyCursor().size()
+     * but without listing them: the matches, and the primary if it isn't one.
+     */
+    public int countCursors(Cursor primaryCur) {
+        JsonNode primary = primaryCur.getData();
+        int ret = countMatches(primary.getRoot()) + 1;
+        if (matchSet.contains(primary) && !aggregateMatches.contains(primary)) ret--;
+        return ret;
     }
 
-    @Override
-    public @Nullable Cursor prevCursor(Cursor primaryCur) {
-        List<DescentStep> atCursorList = primaryCur.asListOfSteps();
-        DescentStep[] atCursor = atCursorList.toArray(new DescentStep[0]);
-        JsonNode root = primaryCur.getData().getRoot();
-        JsonNode prevGuy = findLastBefore(root, atCursor, 0);
-        if (null==prevGuy) return null;
-        return prevGuy.asCursor();
+    /** How many matches the search has found so far (see startSearch). */
+    public int countMatchesSoFar() {
+        return matchList.size();
+    }
 
+    /** True if a search was started and isn't done yet. */
+    public boolean isSearching() {
+        return searching;
     }
 
-    private @Nullable JsonNode findFirstAfter(JsonNode node, DescentStep[] atCursor, int index) {
-        if (index == atCursor.length) {
-            // leaf case: that's where the cursor already is, don't accept this. Children are OK though.
-            if (node instanceof JsonNodeValue) return null;
-            return findFirstUnder(node, true);
+    /**
+     * Start looking for matches in this tree, without finding them all right away:
+     * call findSome to make progress. Highlighting shows what was found so far;
+     * everything else waits for the whole search.
+     *
+     * @param previous the search this one replaces, if any. If it's done and we're
+     *                 looking for a longer substring, we only check what it found.
+     */
+    public void startSearch(JsonNode root, @Nullable MultiCursor previous) {
+        matchSet.clear();
+        matchList.clear();
+        aggregateMatches.clear();
+        toVisit.clear();
+        toVisitInAggregate.clear();
+        candidates = null;
+        recordsToVisit = null;
+        indexedRoot = root;
+        indexedEpoch = JsonNode.getTreeEpoch();
+        indexedSize = (root instanceof JsonNodeList ? ((JsonNodeList) root).size() : 0);
+        searching = true;
+        if (previous instanceof FindCursor && ((FindCursor) previous).narrowsTo(this, root)) {
+            FindCursor prev = (FindCursor) previous;
+            candidates = new ArrayList<>(prev.matchList);
+            candidatesNotInAggregates = candidates.size();
+            candidates.addAll(prev.aggregateMatches);
+            nextCandidate = 0;
+        } else if (root instanceof JsonNodeList) {
+            // the elements one by one, so we can add more if the list grows.
+            JsonNodeList list = (JsonNodeList) root;
+            recordsToVisit = candidateRecords(list);
+            if (null==recordsToVisit) recordsToVisit = list.getIndexesInOrder();
+            nextRecord = 0;
+            if (matches(root)) addMatch(root, false);
+            JsonNodeIterator<?> it = root.iterateChildren(true);
+            if (null!=it && it.isAggregate()) visit(it.get(), true);
         } else {
-            DescentStep nextStep = atCursor[index];
-            JsonNode nextNode = nextStep.apply(node);
-            JsonNode result = findFirstAfter(nextNode, atCursor, index + 1);
-            if (null != result) return result;
-            // now try all children past that one.
-            if (nextStep instanceof DescentIndex) {
-                DescentIndex di = (DescentIndex) nextStep;
-                JsonNodeList nodeList = (JsonNodeList) node;
-                for (int i = di.get() + 1; i < nodeList.childCount(); i++) {
-                    nextNode = nodeList.get(i);
-                    result = findFirstUnder(nextNode, false);
-                    if (null != result) return result;
-                }
-            } else if (nextStep instanceof DescentKey) {
-                DescentKey dk = (DescentKey) nextStep;
-                JsonNodeMap nm = (JsonNodeMap) node;
-                boolean searching = true;
-                for (String key : nm.getKeysInOrder()) {
-                    if (searching) {
-                        if (key.equals(dk.get())) {
-                            searching = false;
-                        }
-                        continue;
-                    }
-                    result = findFirstUnder(nm.getChild(key), false);
-                    if (null != result) {
-                        return result;
-                    }
-                }
-            }
+            visit(root, false);
         }
-        return null;
     }
 
-    private @Nullable JsonNode findLastBefore(JsonNode node, DescentStep[] atCursor, int index) {
-        if (index == atCursor.length) {
-            // leaf case: that's where the cursor already is, don't accept this. Children are OK though.
-            if (node instanceof JsonNodeValue<?>) return null;
-            return findLastUnder(node, true);
+    // The elements of the list that may match, according to its text index.
+    // Null if it can't tell.
+    private @Nullable int[] candidateRecords(JsonNodeList list) {
+        TrigramIndex index = list.getTextIndex();
+        if (null==index) return null;
+        List<String> fragments;
+        if (null!=regexp) {
+            fragments = TrigramIndex.requiredLiterals(regexp.pattern());
         } else {
-            DescentStep nextStep = atCursor[index];
-            JsonNode nextNode = nextStep.apply(node);
-            JsonNode result = findLastBefore(nextNode, atCursor, index+1);
-            if (null!=result) return result;
-            // now try all children past that one.
-            if (nextStep instanceof DescentIndex) {
-                DescentIndex di = (DescentIndex) nextStep;
-                JsonNodeList nodeList = (JsonNodeList) node;
-                for (int i=di.get()-1; i>=0; i--) {
-                    nextNode = nodeList.get(i);
-                    result = findLastUnder(nextNode, false);
-                    if (null!=result) return result;
-                }
-            } else if (nextStep instanceof DescentKey) {
-                DescentKey dk = (DescentKey) nextStep;
-                JsonNodeMap nm = (JsonNodeMap) node;
-                boolean searching = true;
-                List<String> keys = new ArrayList<>(nm.getKeysInOrder());
-                Collections.reverse(keys);
-                for (String key : keys) {
-                    if (searching) {
-                        if (key.equals(dk.get())) {
-                            searching = false;
-                        }
-                        continue;
-                    }
-                    result = findLastUnder(nm.getChild(key), false);
-                    if (null!=result) { return result; }
-                }
-            }
+            fragments = List.of(pattern);
         }
-        return null;
+        BitSet maybe = index.candidates(fragments);
+        if (null==maybe) return null;
+        int indexed = index.recordCount();
+        int[] ret = new int[list.size()];
+        int count = 0;
+        for (int i : list.getIndexesInOrder()) {
+            if (i >= indexed || maybe.get(i)) ret[count++] = i;
+        }
+        return Arrays.copyOf(ret, count);
     }
 
     /**
-     * @return the first child of "node" (or "node" itself) that matches.
+     * Continue the search for about that many milliseconds.
+     * @return true if the search is done.
      */
-    private @Nullable JsonNode findFirstUnder(JsonNode node, boolean excludeSelf) {
-        if (!excludeSelf && matches(node)) return node;
-        if (node instanceof JsonNodeValue<?>) {
-            return null;
+    public boolean findSome(long millis) {
+        if (!searching) return true;
+        refresh(indexedRoot);
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        int steps = 0;
+        while (searching) {
+            // checking the time isn't free, so not every time.
+            if ((++steps & 0xff) == 0 && System.nanoTime() > deadline) return false;
+            searchStep();
         }
-        JsonNode child = node.firstChild();
-        while (null!=child) {
-            JsonNode ret = findFirstUnder(child, false);
-            if (null!=ret) return ret;
-            child = child.nextSibling();
+        return true;
+    }
+
+    // True if everything "next" would find in root, we found: it's looking for a
+    // longer substring with the same options.
+    private boolean narrowsTo(FindCursor next, JsonNode root) {
+        return !searching && root==indexedRoot && indexedEpoch==JsonNode.getTreeEpoch()
+                && null==regexp && null==next.regexp
+                && substring && next.substring
+                && ignoreCase==next.ignoreCase && inKey==next.inKey && inValue==next.inValue
+                && ignoreComments==next.ignoreComments
+                && next.pattern.contains(pattern);
+    }
+
+    // Find all the matches, unless we already did for this version of the tree.
+    private void updateIndex(JsonNode root) {
+        refresh(root);
+        // finish what was started.
+        while (searching) searchStep();
+    }
+
+    // If the tree changed since we searched it, search again (see findSome).
+    // If all that changed is that the root list got more elements at the end,
+    // we only look at those.
+    private void refresh(JsonNode root) {
+        int epoch = JsonNode.getTreeEpoch();
+        if (root==indexedRoot && indexedEpoch==epoch) return;
+        if (root==indexedRoot && root instanceof JsonNodeList && null==candidates
+                && (!searching || null!=recordsToVisit)) {
+            JsonNodeList list = (JsonNodeList) root;
+            if (null==list.getSort() && list.onlyAppendedSince(indexedEpoch)) {
+                int size = list.size();
+                int[] more = (searching ? Arrays.copyOfRange(recordsToVisit, nextRecord, recordsToVisit.length) : new int[0]);
+                int from = more.length;
+                more = Arrays.copyOf(more, from + size - indexedSize);
+                for (int i = indexedSize; i < size; i++) more[from++] = i;
+                recordsToVisit = more;
+                nextRecord = 0;
+                indexedSize = size;
+                indexedEpoch = epoch;
+                searching = true;
+                return;
+            }
         }
-        return null;
+        startSearch(root, null);
     }
 
-    /**
-     * @return the last child of "node" (or "node" itself) that matches.
-     */
-    private @Nullable JsonNode findLastUnder(JsonNode node, boolean excludeSelf) {
-        if (!excludeSelf && matches(node)) return node;
-        if (node instanceof JsonNodeValue) {
-            return null;
+    // Look at one more node.
+    private void searchStep() {
+        if (null!=candidates) {
+            if (nextCandidate==candidates.size()) {
+                candidates = null;
+                searching = false;
+                return;
+            }
+            JsonNode node = candidates.get(nextCandidate);
+            boolean inAggregate = nextCandidate >= candidatesNotInAggregates;
+            nextCandidate++;
+            if (matches(node)) addMatch(node, inAggregate);
+            return;
+        }
+        int top = toVisit.size() - 1;
+        if (top<0) {
+            if (null!=recordsToVisit && nextRecord<recordsToVisit.length) {
+                visit(((JsonNodeList) indexedRoot).get(recordsToVisit[nextRecord++]), false);
+                return;
+            }
+            recordsToVisit = null;
+            searching = false;
+            return;
         }
-        JsonNode child = node.lastChild();
-        while (null!=child) {
-            JsonNode ret = findLastUnder(child, false);
-            if (null!=ret) return ret;
-            child = child.prevSibling();
+        JsonNodeIterator<?> it = toVisit.get(top);
+        if (null==it) {
+            // done with that level
+            toVisit.remove(top);
+            toVisitInAggregate.remove(top);
+            return;
         }
-        return null;
+        toVisit.set(top, it.next());
+        visit(it.get(), toVisitInAggregate.get(top) || it.isAggregate());
     }
 
+    private void visit(JsonNode node, boolean inAggregate) {
+        if (matches(node)) addMatch(node, inAggregate);
+        JsonNodeIterator<?> children = node.iterateChildren(true);
+        if (null!=children) {
+            toVisit.add(children);
+            toVisitInAggregate.add(inAggregate);
+        }
+    }
+
+    private void addMatch(JsonNode node, boolean inAggregate) {
+        matchSet.add(node);
+        if (inAggregate) {
+            aggregateMatches.add(node);
+        } else {
+            matchList.add(node);
+        }
+    }
+
+    @Override
+    public @Nullable Cursor nextCursor(Cursor primaryCur) {
+        JsonNode primary = primaryCur.getData();
+        updateIndex(primary.getRoot());
+        // the first match that's shown after the primary
+        int lo = 0, hi = matchList.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (JsonNode.compareDisplayOrder(matchList.get(mid), primary) > 0) hi = mid;
+            else lo = mid + 1;
+        }
+        if (lo == matchList.size()) return null;
+        return matchList.get(lo).asCursor();
+    }
+
+    @Override
+    public @Nullable Cursor prevCursor(Cursor primaryCur) {
+        JsonNode primary = primaryCur.getData();
+        updateIndex(primary.getRoot());
+        // the first match that isn't shown before the primary, then one before that.
+        int lo = 0, hi = matchList.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (JsonNode.compareDisplayOrder(matchList.get(mid), primary) >= 0) hi = mid;
+            else lo = mid + 1;
+        }
+        if (lo == 0) return null;
+        return matchList.get(lo - 1).asCursor();
+    }
 
 }
\ No newline at end of file
@@ -1,23 +1,100 @@
 package org.example.cursor;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.example.Cursor;
 import org.example.JsonNode;
+import org.example.JsonNodeList;
 import org.example.JsonNodeMap;
+import org.example.JsonNodeValue;
+import org.example.KeyShape;
+import org.example.ShapedMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+/**
+ * A multicursor that selects everything a path like ".players[*].name" leads to.
+ *
+ * The steps can be:
+ *   .key          the child with that key
+ *   .*            all the children of a map
+ *   [3]           the child at that index
+ *   [*]           all the elements of a list
+ *   ..key  ..*    same as .key or .*, but at any depth below
+ *   [?(@.a.b>3)]  the children (of a list or map) where the test holds. Compare with
+ *                 == != < <= > >= to a number, a 'string', true, false or null, or just
+ *                 write the path (like [?(@.email)]) to check that it's there.
+ *
+ * The path is compiled into a little state machine (see Op): checking a cursor follows
+ * its steps once, and finding all the matches only visits the children that can lead
+ * to one, going straight to a key or index when that's all the path allows.
+ */
 public class PathCursor implements MultiCursor {
 
-    private List<DescentStep> steps;
+    private enum Kind { KEY, ALL_KEYS, INDEX, ALL_INDICES, ANY_DEPTH, FILTER }
+
+    // One step of the path. All of them go down one level, except ANY_DEPTH
+    // that goes down any number of levels (including none).
+    private static final class Op {
+        final @NotNull Kind kind;
+        final @Nullable String key;
+        final int index;
+        final @Nullable Filter filter;
+        // Where key was in the last map we looked it up in. In a list of similar
+        // records they all have the same shape, so that's one lookup for all of them.
+        private @Nullable KeyShape lastShape = null;
+        private int lastPosition;
+
+        Op(@NotNull Kind kind, @Nullable String key, int index, @Nullable Filter filter) {
+            this.kind = kind;
+            this.key = key;
+            this.index = index;
+            this.filter = filter;
+        }
+
+        // Our key's position in that shape, or -1.
+        int positionIn(KeyShape shape) {
+            if (shape != lastShape) {
+                lastPosition = shape.indexOf(key);
+                lastShape = shape;
+            }
+            return lastPosition;
+        }
+    }
+
+    // States are bit masks: bit i means "we did the first i steps", so the
+    // last bit (done) means we're at a match.
+    private static final int MAX_STEPS = 62;
+
+    private final Op[] ops;
+    private final long done;
+    // The states that are followed by an ANY_DEPTH or a FILTER step.
+    private final long anyDepthStates;
+    private final long filterStates;
+    // How deep the matches are, or -1 if it varies (with ANY_DEPTH).
+    private final int fixedDepth;
+
+    // All the matches in matchesRoot, for next/prev. Kept until the tree changes.
+    private @Nullable JsonNode matchesRoot = null;
+    private int matchesEpoch;
+    private final ArrayList<JsonNode> matches = new ArrayList<>();
 
     public PathCursor(String path) {
-        List<DescentStep> newSteps = new ArrayList<>();
+        List<Op> newOps = new ArrayList<>();
         String whereToGo = path;
         while (!whereToGo.isEmpty()) {
-            if (whereToGo.startsWith(".")) {
+            if (whereToGo.startsWith("..")) {
+                newOps.add(new Op(Kind.ANY_DEPTH, null, -1, null));
+                // what follows is a normal step.
+                whereToGo = whereToGo.substring(whereToGo.startsWith("..[") ? 2 : 1);
+            } else if (whereToGo.startsWith(".")) {
                 int dot = whereToGo.indexOf('.', 1);
                 int bracket = whereToGo.indexOf('[');
                 int end = whereToGo.length();
@@ -26,11 +103,16 @@ public class PathCursor implements MultiCursor {
                 if (choice < 0 || (end >= 0 && end < choice)) choice = end;
                 String token = whereToGo.substring(1, choice);
                 if ("*".equals(token)) {
-                    newSteps.add(new DescentAll(Cursor.DescentStyle.ALL_KEYS));
+                    newOps.add(new Op(Kind.ALL_KEYS, null, -1, null));
                 } else {
-                    newSteps.add(new DescentKey(token));
+                    newOps.add(new Op(Kind.KEY, token, -1, null));
                 }
                 whereToGo = whereToGo.substring(choice);
+            } else if (whereToGo.startsWith("[?(")) {
+                int close = Filter.findEnd(whereToGo, 3);
+                if (close < 0) throw new RuntimeException("Missing ')]' at the end of " + whereToGo);
+                newOps.add(new Op(Kind.FILTER, null, -1, new Filter(whereToGo.substring(3, close))));
+                whereToGo = whereToGo.substring(close + 2);
             } else if (whereToGo.startsWith("[")) {
                 int end = whereToGo.length();
                 int bracket = whereToGo.indexOf(']');
@@ -41,146 +123,420 @@ public class PathCursor implements MultiCursor {
                 String token = whereToGo.substring(1, choice);
                 if (token.equals("*")) {
                     // special case: all indices
-                    newSteps.add(new DescentAll(Cursor.DescentStyle.ALL_INDICES));
+                    newOps.add(new Op(Kind.ALL_INDICES, null, -1, null));
                 } else {
-                    Integer index = Integer.parseInt(token);
-                    newSteps.add(new DescentIndex(index));
+                    int index = Integer.parseInt(token);
+                    newOps.add(new Op(Kind.INDEX, null, index, null));
                 }
                 whereToGo = whereToGo.substring(choice+1);
             } else {
                 throw new RuntimeException("Don't know how to go to " + whereToGo);
             }
         }
-        steps = newSteps;
+        if (newOps.size() > MAX_STEPS) throw new RuntimeException("Path is too long: " + path);
+        ops = newOps.toArray(new Op[0]);
+        done = 1L << ops.length;
+        long anyDepth = 0, filters = 0;
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i].kind == Kind.ANY_DEPTH) anyDepth |= 1L << i;
+            if (ops[i].kind == Kind.FILTER) filters |= 1L << i;
+        }
+        anyDepthStates = anyDepth;
+        filterStates = filters;
+        fixedDepth = (0 == anyDepth ? ops.length : -1);
+    }
+
+    // Add the states we can reach without going down, by skipping ANY_DEPTH.
+    private long closure(long states) {
+        if (0 == (states & anyDepthStates)) return states;
+        for (int i = 0; i < ops.length; i++) {
+            if (0 != (states & anyDepthStates & (1L << i))) states |= 1L << (i + 1);
+        }
+        return states;
+    }
+
+    /**
+     * The states we're in after going down to a child.
+     * @param key the child's key, or null if it's in a list
+     * @param index the child's index, if it's in a list
+     * @param child the child (a JsonNode or its value as parsed), only needed for filters.
+     */
+    private long advance(long states, @Nullable String key, int index, @Nullable Object child) {
+        long next = 0;
+        for (long s = states & ~done; s != 0; s &= s - 1) {
+            int i = Long.numberOfTrailingZeros(s);
+            Op op = ops[i];
+            boolean ok;
+            switch (op.kind) {
+                case KEY: ok = (null != key && key.equals(op.key)); break;
+                case ALL_KEYS: ok = (null != key); break;
+                case INDEX: ok = (null == key && index == op.index); break;
+                case ALL_INDICES: ok = (null == key); break;
+                case ANY_DEPTH:
+                    // stay here, we can go deeper.
+                    next |= 1L << i;
+                    ok = false;
+                    break;
+                default: ok = (null != child && op.filter.test(child)); break;
+            }
+            if (ok) next |= 1L << (i + 1);
+        }
+        return closure(next);
     }
 
     @Override
     public boolean selects(Cursor primary, @NotNull Cursor underTest) {
-        List<DescentStep> listOfSteps = underTest.asListOfSteps();
-        if (this.steps.size() != listOfSteps.size()) return false;
-        int i=-1;
-        for (DescentStep step: listOfSteps) {
-            i++;
-            DescentStep myStep = this.steps.get(i);
-            if (myStep instanceof DescentAll) {
-                DescentAll mine = (DescentAll) myStep;
-                if (mine.getDescentStyle()== Cursor.DescentStyle.ALL_INDICES && step instanceof DescentIndex) continue;
-                if (mine.getDescentStyle()== Cursor.DescentStyle.ALL_KEYS && step instanceof DescentKey) continue;
-                return false;
-            }
-            if (!step.equals(myStep)) return false;
+        int depth = underTest.getDepth();
+        if (fixedDepth >= 0 && fixedDepth != depth) return false;
+        return 0 != (statesAt(underTest, depth) & done);
+    }
+
+    // The states we're in at that cursor, "depth" levels below the root. We go up to the
+    // root first and advance on the way back down, so it's the same order as a walk.
+    private long statesAt(Cursor cur, int depth) {
+        if (0 == depth) return closure(1L);
+        long states = statesAt(cur.getParent(), depth - 1);
+        if (0 == states) return 0;
+        DescentStep step = cur.getStep();
+        // filters need to see the node.
+        Object child = (0 != (states & filterStates) ? cur.getData() : null);
+        if (step instanceof DescentKey) {
+            return advance(states, ((DescentKey) step).get(), -1, child);
+        } else if (step instanceof DescentIndex) {
+            return advance(states, null, ((DescentIndex) step).get(), child);
         }
-        return true;
+        return 0;
     }
 
     @Override
     public void addAllNodes(Cursor primary, @NotNull List<JsonNode> list) {
         if (null==primary) throw new RuntimeException("Sorry, PathCursor needs a primary even if it's just root");
         JsonNode node = primary.getData().getRoot();
-        addAllNodesInternal(-1, node, primary, list);
-    }
-
-    // Add all the selected children, recursively.
-    // parentDepth must be the depth of "node", the node we're going to apply descent step parentDepth+1 to.
-    private void addAllNodesInternal(int parentDepth, JsonNode node, Cursor primary, List<JsonNode> list) {
-        int depth = parentDepth;
-        while (++depth<this.steps.size()) {
-            DescentStep step = this.steps.get(depth);
-            if (step instanceof DescentKey || step instanceof DescentKey) {
-                node = step.apply(node);
-            } else if (step instanceof DescentAll) {
-                var it = node.iterateChildren(true);
-                while (it!=null) {
-                    if (!it.isAggregate()) {
-                        addAllNodesInternal(depth, it.get(), primary, list);
-                    }
-                    it = it.next();
+        walk(node, closure(1L), primary, list);
+    }
+
+    // Add the matches at or under node, in display order. "states" are the states we're in at node.
+    private void walk(JsonNode node, long states, @Nullable Cursor primary, List<JsonNode> out) {
+        if (0 != (states & done)) {
+            if (null == primary || !node.asCursor().equals(primary)) out.add(node);
+            states &= ~done;
+        }
+        if (0 == states) return;
+        if (0 == (states & (states - 1))) {
+            // Only one way to go: if it's a specific key or index, go straight there.
+            Op op = ops[Long.numberOfTrailingZeros(states)];
+            if (op.kind == Kind.KEY) {
+                if (node instanceof JsonNodeMap) {
+                    JsonNodeMap map = (JsonNodeMap) node;
+                    int position = op.positionIn(map.getShape());
+                    if (position >= 0) walk(map.getChildAt(position), closure(states << 1), primary, out);
+                }
+                return;
+            }
+            if (op.kind == Kind.INDEX) {
+                if (node instanceof JsonNodeList) {
+                    JsonNodeList kids = (JsonNodeList) node;
+                    if (op.index >= 0 && op.index < kids.size()) walk(kids.get(op.index), closure(states << 1), primary, out);
                 }
                 return;
-            } else {
-                throw new RuntimeException("Unknown descent step: " + step);
             }
         }
-        if (!node.asCursor().equals(primary)) {
-            list.add(node);
+        boolean needChild = (0 != (states & filterStates));
+        if (node instanceof JsonNodeList) {
+            JsonNodeList kids = (JsonNodeList) node;
+            for (int index : kids.getIndexesInOrder()) {
+                // filters can look at the value as parsed, so we only make nodes for the ones we keep.
+                long next = advance(states, null, index, needChild ? kids.peek(index) : null);
+                if (0 != next) walk(kids.get(index), next, primary, out);
+            }
+        } else if (node instanceof JsonNodeMap) {
+            JsonNodeMap map = (JsonNodeMap) node;
+            for (String key : map.getKeysInOrder()) {
+                long next = advance(states, key, -1, needChild ? map.getChild(key) : null);
+                if (0 != next) walk(map.getChild(key), next, primary, out);
+            }
         }
     }
 
-    @Override
-    public @Nullable Cursor nextCursor(Cursor primary) {
-        if (null==primary) {
-            if (null==primary) throw new RuntimeException("Sorry, PathCursor needs a primary even if it's just root");
+    /** True if the path selects the root itself (like "" or ".."). */
+    public boolean selectsRoot() {
+        return 0 != (closure(1L) & done);
+    }
+
+    /**
+     * Find the matches in a value as parsed (maps, lists and plain values), without
+     * making nodes. "found" gets each match's value, in document order.
+     */
+    public void findIn(@Nullable Object root, @NotNull Consumer<Object> found) {
+        walkValue(root, closure(1L), found);
+    }
+
+    /**
+     * Same, for the element at that index of a root list we don't have.
+     * Doesn't check whether the root itself is selected, see selectsRoot.
+     */
+    public void findInElement(int index, @Nullable Object element, @NotNull Consumer<Object> found) {
+        long states = advance(closure(1L), null, index, element);
+        if (0 != states) walkValue(element, states, found);
+    }
+
+    /**
+     * Find the matches in the value the parser is at (it's the root), reading as little as we can:
+     * only the matches, and the children that filters look at, are read into memory.
+     * Everything else is skipped as it goes by. Afterwards the parser is at the value's last token.
+     *
+     * @param reader what we use to read the matches, so they come out as if parsed normally.
+     */
+    public void findInStream(@NotNull JsonParser parser, @NotNull ObjectReader reader, @NotNull Consumer<Object> found) throws IOException {
+        stream(parser, reader, closure(1L), found);
+    }
+
+    private void stream(JsonParser parser, ObjectReader reader, long states, Consumer<Object> found) throws IOException {
+        if (0 != (states & done)) {
+            // we need all of it anyway.
+            Object value = reader.readValue(parser);
+            walkValue(value, states, found);
+            return;
         }
-        List<DescentStep> listOfSteps = primary.asListOfSteps();
-        JsonNode node = primary.getData().getRoot();
-        // Find where we differ
-        int i=0;
-        while (i<steps.size() && i<listOfSteps.size()) {
-            if (!steps.get(i).equals(listOfSteps.get(i))) {
-                break;
-            }
-            node = steps.get(i).apply(node);
-            i++;
-        }
-        if (i>=steps.size()) {
-            // all our steps match, we're done.
-            return null;
-        }
-        DescentStep lastEqualStep = steps.get(i-1);
-        if (lastEqualStep.getDescentStyle()== Cursor.DescentStyle.A_KEY || lastEqualStep.getDescentStyle()== Cursor.DescentStyle.ALL_KEYS) {
-            // Two keys. Find the first one after the primary's.
-            JsonNodeMap jnm = (JsonNodeMap) node;
-            boolean found = false;
-            String theirKey = ((DescentKey)listOfSteps.get(i)).get();
-            String myKey = null; // null here indicates ALL_KEYS
-            if (steps.get(i) instanceof DescentKey) {
-                myKey = ((DescentKey)steps.get(i)).get();
-            }
-            for (String key : jnm.getKeysInOrder()) {
-                if (key.equals(theirKey)) {
-                    // we can start attempting to go down from this very key.
-                    found = true;
+        if (0 == states) {
+            parser.skipChildren();
+            return;
+        }
+        boolean needChild = (0 != (states & filterStates));
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                parser.nextToken();
+                if (needChild) {
+                    Object child = reader.readValue(parser);
+                    long next = advance(states, key, -1, child);
+                    if (0 != next) walkValue(child, next, found);
+                } else {
+                    stream(parser, reader, advance(states, key, -1, null), found);
                 }
-                if (found && (myKey==null || myKey.equals(key)  )) {
-                    // we found the next guy.
-                    JsonNode deepNode = jnm.getChild(key);
-                    JsonNode descendant = firstDescendantFromPrefix(deepNode, i);
-                    if (null==descendant) {
-                        // maybe path is foo.*.bar,
-                        // we tried foo.a but it doesn't have foo.a.bar.
-                        // So now we're going to try foo.b, etc.
-                        continue;
-                    }
-                    Cursor ret = descendant.asCursor();
-                    // in case what we found was *exactly* the cursor we started from, keep looking.
-                    if (ret.equals(primary)) continue;
-                    return ret;
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (needChild) {
+                    Object child = reader.readValue(parser);
+                    long next = advance(states, null, index, child);
+                    if (0 != next) walkValue(child, next, found);
+                } else {
+                    stream(parser, reader, advance(states, null, index, null), found);
                 }
+                index++;
             }
-            // no match. That should mean we were past the last cursor.
-            return null;
         }
-        // TODO: the rest
-        return primary;
     }
 
-    // so if deepNodeDepth=0 that means we applied steps[0] to get to deepNode.
-    private JsonNode firstDescendantFromPrefix(JsonNode deepNode, int deepNodeDepth) {
-        JsonNode node = deepNode;
-        for (int i=deepNodeDepth+1; i<steps.size(); i++) {
-            if (null==node) return null;
-            DescentStep step = steps.get(i);
-            if (step instanceof DescentAll) {
-                node = ((DescentAll) step).applyFirst(node);
-            } else {
-                node = step.apply(node);
+    // Like walk, but for values as parsed.
+    private void walkValue(@Nullable Object value, long states, Consumer<Object> found) {
+        if (0 != (states & done)) {
+            found.accept(value);
+            states &= ~done;
+        }
+        if (0 == states) return;
+        boolean needChild = (0 != (states & filterStates));
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            for (int index = 0; index < list.size(); index++) {
+                Object child = list.get(index);
+                long next = advance(states, null, index, needChild ? child : null);
+                if (0 != next) walkValue(child, next, found);
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                long next = advance(states, String.valueOf(e.getKey()), -1, needChild ? e.getValue() : null);
+                if (0 != next) walkValue(e.getValue(), next, found);
             }
         }
-        return node;
+    }
+
+    // All the matches in this tree, in display order.
+    private List<JsonNode> allMatches(JsonNode root) {
+        if (root != matchesRoot || matchesEpoch != JsonNode.getTreeEpoch()) {
+            matches.clear();
+            walk(root, closure(1L), null, matches);
+            matchesRoot = root;
+            matchesEpoch = JsonNode.getTreeEpoch();
+        }
+        return matches;
+    }
+
+    @Override
+    public @Nullable Cursor nextCursor(Cursor primary) {
+        if (null==primary) throw new RuntimeException("Sorry, PathCursor needs a primary even if it's just root");
+        JsonNode node = primary.getData();
+        List<JsonNode> all = allMatches(node.getRoot());
+        // the first match that's shown after the primary
+        int lo = 0, hi = all.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (JsonNode.compareDisplayOrder(all.get(mid), node) > 0) hi = mid;
+            else lo = mid + 1;
+        }
+        if (lo == all.size()) return null;
+        return all.get(lo).asCursor();
     }
 
     @Override
     public @Nullable Cursor prevCursor(Cursor primary) {
-        return null;
+        if (null==primary) throw new RuntimeException("Sorry, PathCursor needs a primary even if it's just root");
+        JsonNode node = primary.getData();
+        List<JsonNode> all = allMatches(node.getRoot());
+        // the first match that isn't shown before the primary, then one before that.
+        int lo = 0, hi = all.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (JsonNode.compareDisplayOrder(all.get(mid), node) >= 0) hi = mid;
+            else lo = mid + 1;
+        }
+        if (lo == 0) return null;
+        return all.get(lo - 1).asCursor();
+    }
+
+    /**
+     * The test in "[?(...)]": follow a path from the child ("@.a.b"), and compare
+     * what's there with a value. Works on nodes and on values as parsed.
+     */
+    private static final class Filter {
+        private static final Object MISSING = new Object();
+        private final String[] fields;
+        // Where each field was in the last map shape we saw, see Op.positionIn.
+        private final KeyShape[] lastShapes;
+        private final int[] lastPositions;
+        // null if we only check the path is there.
+        private final @Nullable String operator;
+        // a String, Double, Boolean, or null.
+        private final @Nullable Object literal;
+
+        Filter(String text) {
+            String rest = text.trim();
+            if (!rest.startsWith("@")) throw new RuntimeException("Filter must start with '@': " + text);
+            int i = 1;
+            List<String> path = new ArrayList<>();
+            while (i < rest.length() && rest.charAt(i) == '.') {
+                int start = ++i;
+                while (i < rest.length() && "=!<> .".indexOf(rest.charAt(i)) < 0) i++;
+                path.add(rest.substring(start, i));
+            }
+            fields = path.toArray(new String[0]);
+            lastShapes = new KeyShape[fields.length];
+            lastPositions = new int[fields.length];
+            rest = rest.substring(i).trim();
+            if (rest.isEmpty()) {
+                operator = null;
+                literal = null;
+                return;
+            }
+            int opLength = 0;
+            while (opLength < rest.length() && "=!<>".indexOf(rest.charAt(opLength)) >= 0) opLength++;
+            operator = rest.substring(0, opLength);
+            if (!List.of("==", "!=", "<", "<=", ">", ">=").contains(operator)) {
+                throw new RuntimeException("Unknown comparison '" + operator + "' in filter: " + text);
+            }
+            literal = parseLiteral(rest.substring(opLength).trim(), text);
+        }
+
+        private static @Nullable Object parseLiteral(String s, String text) {
+            if (s.length() >= 2 && (s.charAt(0) == '\'' || s.charAt(0) == '"') && s.charAt(s.length() - 1) == s.charAt(0)) {
+                StringBuilder ret = new StringBuilder();
+                for (int i = 1; i < s.length() - 1; i++) {
+                    char c = s.charAt(i);
+                    if (c == '\\' && i + 1 < s.length() - 1) c = s.charAt(++i);
+                    ret.append(c);
+                }
+                return ret.toString();
+            }
+            if ("true".equals(s)) return Boolean.TRUE;
+            if ("false".equals(s)) return Boolean.FALSE;
+            if ("null".equals(s)) return null;
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException _x) {
+                throw new RuntimeException("Can't understand '" + s + "' in filter: " + text);
+            }
+        }
+
+        // Where the ")]" that ends the filter starting at "from" is, skipping over strings.
+        static int findEnd(String path, int from) {
+            char quote = 0;
+            for (int i = from; i < path.length(); i++) {
+                char c = path.charAt(i);
+                if (0 != quote) {
+                    if (c == '\\') i++;
+                    else if (c == quote) quote = 0;
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == ')' && i + 1 < path.length() && path.charAt(i + 1) == ']') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        boolean test(Object child) {
+            Object value = resolve(child);
+            if (MISSING == value) return false;
+            if (null == operator) return true;
+            if (null == literal || literal instanceof Boolean) {
+                boolean same = (null == literal ? null == value : literal.equals(value));
+                if ("==".equals(operator)) return same;
+                if ("!=".equals(operator)) return !same;
+                return false;
+            }
+            int cmp;
+            if (literal instanceof Double && value instanceof Number) {
+                cmp = Double.compare(((Number) value).doubleValue(), (Double) literal);
+            } else if (literal instanceof String && value instanceof String) {
+                cmp = ((String) value).compareTo((String) literal);
+            } else {
+                // not the same kind of thing, so not equal and not in order.
+                return "!=".equals(operator);
+            }
+            switch (operator) {
+                case "==": return cmp == 0;
+                case "!=": return cmp != 0;
+                case "<": return cmp < 0;
+                case "<=": return cmp <= 0;
+                case ">": return cmp > 0;
+                default: return cmp >= 0;
+            }
+        }
+
+        // Follow the fields. Returns the value there (as parsed, for a value), or MISSING.
+        private @Nullable Object resolve(Object at) {
+            for (int i = 0; i < fields.length; i++) {
+                if (at instanceof JsonNodeMap) {
+                    JsonNodeMap map = (JsonNodeMap) at;
+                    int position = positionIn(i, map.getShape());
+                    if (position < 0) return MISSING;
+                    at = map.getChildAt(position);
+                } else if (at instanceof ShapedMap) {
+                    ShapedMap map = (ShapedMap) at;
+                    int position = positionIn(i, map.getShape());
+                    if (position < 0) return MISSING;
+                    at = map.getAt(position);
+                } else if (at instanceof Map) {
+                    Map<?, ?> map = (Map<?, ?>) at;
+                    if (!map.containsKey(fields[i])) return MISSING;
+                    at = map.get(fields[i]);
+                } else {
+                    return MISSING;
+                }
+            }
+            if (at instanceof JsonNodeValue) return ((JsonNodeValue<?>) at).getValue();
+            return at;
+        }
+
+        private int positionIn(int field, KeyShape shape) {
+            if (shape != lastShapes[field]) {
+                lastPositions[field] = shape.indexOf(fields[field]);
+                lastShapes[field] = shape;
+            }
+            return lastPositions[field];
+        }
     }
 }
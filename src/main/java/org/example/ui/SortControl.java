@@ -72,6 +72,9 @@ public class SortControl {
     int col, row;
     HashSet<SortEntry> fieldChoices = null;
     ChoiceInputField input;
+    // The keys picked before this one with "+": we sort by those first,
+    // and this one only breaks their ties.
+    ArrayList<Sorter> sortedBy = new ArrayList<>();
 
     public final static String KEYS_CHOICE="(keys)";
     public final static String VALUES_CHOICE="(values)";
@@ -93,6 +96,7 @@ public class SortControl {
         this.selectField = false;
         this.fieldChoices = new HashSet<>();
         this.sortingAMap = false;
+        this.sortedBy = new ArrayList<>();
         for (JsonNode node : this.selectedNodes) {
             if (node instanceof JsonNodeMap) {
                 JsonNodeMap jnm = (JsonNodeMap)node;
@@ -154,6 +158,7 @@ public class SortControl {
                 "│ r : reverse order                 │\n"+
                 "│ a : separate upper/lowercase      │\n"+
                 "│ n : sort strings as numbers       │\n"+
+                "│ + : then sort by another key      │\n"+
                 "├───────────────────────────────────┤\n"+
                 "│ TAB: show/hide choices            │\n"+
                 "│ enter: sort                       │\n"+
@@ -162,6 +167,8 @@ public class SortControl {
                 "│ ? : toggle help text              │\n"+
                 "╰───────────────────────────────────╯\n";
         else menu += "╰───┴────┴─────┴────────────────[?]─╯\n";
+        String title = (sortedBy.isEmpty() ? "[ SORT ]" : "[ THEN BY ]");
+        if (!sortedBy.isEmpty()) menu = menu.replace("─[ SORT ]──", title);
         TerminalSize s = g.getSize();
         g = g.newTextGraphics(new TerminalPosition(s.getColumns()-40,3), new TerminalSize(39,s.getRows()));
         String[] lines = menu.split("\n");
@@ -176,7 +183,7 @@ public class SortControl {
                     continue;
                 }
             }
-            if ((!selectField) && l.contains("TAB")) continue;
+            if ((!selectField) && (l.contains("TAB") || l.contains("+ :"))) continue;
             g.putString(pos, l);
             pos = pos.withRelativeRow(1);
         }
@@ -187,7 +194,7 @@ public class SortControl {
         if (row==0) {
             g.setForegroundColor(TextColor.ANSI.CYAN);
             Rectangle.drawBold(g, top.withRelative(0,0), new TerminalSize(37, 3));
-            g.putString(top.withRelative(13, 0), "[ SORT ]");
+            g.putString(top.withRelative(17 - title.length() / 2, 0), title);
             g.setForegroundColor(fc);
         }
         else if (row==1) {
@@ -233,24 +240,10 @@ public class SortControl {
             if (handled) return null;
         }
         if (key.getKeyType()== KeyType.Enter) {
-            String field;
-            if (input!=null) {
-                field = input.getChoice();
-            } else {
-                field = null;
-            }
-            ArrayList<String> fields = new ArrayList<>();
-            fields.add(field);
-            // We figure out which keys were meant from the string.
-            // This is imperfect: if some keys have a dot in them
-            // then this may be ambiguous.
-            for (SortEntry e : fieldChoices) {
-                if (e.toString().equals(field)) {
-                    // found our choice!
-                    fields = e.fields;
-                }
-            }
-            return new Sorter(this.reverse, ignoreCase, numberify, fields, KEYS_CHOICE.equals(field));
+            if (sortedBy.isEmpty()) return currentKey();
+            ArrayList<Sorter> keys = new ArrayList<>(sortedBy);
+            keys.add(currentKey());
+            return Sorter.byEach(keys);
         }
         if (key.getKeyType()==KeyType.ArrowDown) {
             if (row<1) { this.row++; }
@@ -279,13 +272,49 @@ public class SortControl {
             if (key.getKeyType()==KeyType.Character && (pressed=='?')) {
                 this.showHelp = !this.showHelp;
             }
+            if (key.getKeyType()==KeyType.Character && pressed=='+' && selectField) {
+                // keep this key, and pick the one that breaks its ties.
+                // That one starts with the default settings, like the first one did.
+                sortedBy.add(currentKey());
+                this.reverse = false;
+                this.ignoreCase = true;
+                this.numberify = true;
+                this.row = 0;
+                this.col = 0;
+                input = new ChoiceInputField(fieldChoices.stream().map(SortEntry::toString).toArray(String[]::new));
+            }
         }
         return null;
     }
 
+    // The key and settings currently selected.
+    private Sorter currentKey() {
+        String field;
+        if (input!=null) {
+            field = input.getChoice();
+        } else {
+            field = null;
+        }
+        ArrayList<String> fields = new ArrayList<>();
+        fields.add(field);
+        // We figure out which keys were meant from the string.
+        // This is imperfect: if some keys have a dot in them
+        // then this may be ambiguous.
+        for (SortEntry e : fieldChoices) {
+            if (e.toString().equals(field)) {
+                // found our choice!
+                fields = e.fields;
+            }
+        }
+        return new Sorter(this.reverse, ignoreCase, numberify, fields, KEYS_CHOICE.equals(field));
+    }
+
     /** The help text for what the user has selected. */
     public @Nullable String getHelpText() {
         if (row==0) {
+            if (!sortedBy.isEmpty()) {
+                return "Which key to sort by when they're equal by " + Sorter.byEach(sortedBy);
+            }
             return "For lists of maps, which key of the map to sort by";
         }
         if (row==1) {
@@ -236,6 +236,27 @@ public class CursorSortedTest {
         assertEquals(".nice", main.getRoot().rootInfo.userCursor.toString());
     }
 
+    @Test
+    public void testAppendToSortedList() throws Exception {
+        JsonNode state = JsonNode.parseJson("[ 5, 1, 3, 1.0 ]");
+        JsonNodeList jnl = (JsonNodeList)state;
+        Sorter sorter = new Sorter(false, false, false, new ArrayList<String>(), false);
+        jnl.sort(sorter);
+        state.cursorDown();
+        state.cursorDown();
+        Cursor before = state.rootInfo.userCursor;
+        assertEquals(1.0, before.getData().getValue());
+
+        jnl.appendValues(java.util.List.of(4, 0, 3, 6));
+        // the cursor still points to the same value
+        assertEquals(1.0, state.rootInfo.userCursor.getData().getValue());
+        // same order as sorting everything from scratch
+        JsonNodeList expected = (JsonNodeList)JsonNode.parseJson("[ 5, 1, 3, 1.0, 4, 0, 3, 6 ]");
+        expected.sort(sorter);
+        assertArrayEquals(expected.getIndexesInOrder(), jnl.getIndexesInOrder());
+        jnl.checkInvariants();
+    }
+
 }
 
 
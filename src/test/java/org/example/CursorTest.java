@@ -27,6 +27,27 @@ public class CursorTest {
     }
 
 
+    @Test
+    public void testCursorAncestry() {
+        Cursor root = new Cursor();
+        Cursor a = root.enterKey("a");
+        Cursor a0 = a.enterIndex(0);
+        Cursor a0b = a0.enterKey("b");
+        // same steps, built separately
+        Cursor other = new Cursor().enterKey("a").enterIndex(0);
+        assertEquals(2, a0.getDepth());
+        assertEquals(a0.getPathHash(), other.getPathHash());
+        assertTrue(a0.samePath(other));
+        assertFalse(a0.samePath(a));
+        assertFalse(a0.samePath(new Cursor().enterKey("a").enterIndex(1)));
+        assertTrue(root.ancestorOf(a0b));
+        assertTrue(a.ancestorOf(a0b));
+        assertTrue(other.ancestorOf(a0b));
+        assertFalse(a0b.ancestorOf(a0b));
+        assertFalse(a0b.ancestorOf(a));
+        assertFalse(new Cursor().enterKey("b").ancestorOf(a0b));
+    }
+
     @Test
     public void testMultiCursorIntoMap() throws Exception {
         JsonNode state = JsonNode.parseJson(
@@ -300,6 +321,45 @@ public class CursorTest {
         assertEquals("[1]", json.rootInfo.userCursor.toString());
     }
 
+    @Test
+    public void testVisibilityFollowsFoldsAndPins() throws Exception {
+        JsonNode json = JsonNode.parseJson(
+               " {\n"+
+               "   \"a\": {\n"+
+               "     \"b\": {\n"+
+               "       \"c\": 1,\n"+
+               "       \"d\": 2\n"+
+               "     }\n"+
+               "   }\n"+
+               " }\n");
+        JsonNodeMap a = (JsonNodeMap) ((JsonNodeMap) json).getChild("a");
+        JsonNodeMap b = (JsonNodeMap) a.getChild("b");
+        JsonNode c = b.getChild("c");
+        JsonNode d = b.getChild("d");
+        assertTrue(c.isVisible());
+        assertTrue(d.isVisible());
+        a.setFolded(true);
+        assertFalse(c.isVisible());
+        assertFalse(d.isVisible());
+        assertTrue(a.isVisible());
+        // pinning something inside the fold shows it
+        c.setPinned(true);
+        assertTrue(c.isVisible());
+        assertFalse(d.isVisible());
+        // pinning a folded container shows everything in it
+        b.setPinned(true);
+        assertTrue(d.isVisible());
+        b.setPinned(false);
+        assertFalse(d.isVisible());
+        a.setFolded(false);
+        assertTrue(d.isVisible());
+        json.setFoldedLevels(1);
+        // b has a pin inside, so it shows.
+        assertTrue(b.isVisible());
+        assertFalse(d.isVisible());
+        assertTrue(c.isVisible());
+    }
+
     @Test
     public void testNextCursorForFork() throws Exception {
         JsonNode state = JsonNode.parseJson(
@@ -478,6 +538,113 @@ public class CursorTest {
         assertEquals(".orange.closest", node.rootInfo.userCursor.toString());
     }
 
+    @Test
+    public void testFindMatchesFollowTreeChanges() throws Exception {
+        JsonNode node = JsonNode.parseJson("[\"red\", \"blue\", \"red\", {\"red\": 1}]");
+        FindCursor find = new FindCursor("red");
+        node.rootInfo.setSecondaryCursors(find);
+        JsonNodeList list = (JsonNodeList) node;
+        assertTrue(list.get(0).isAtSecondaryCursor());
+        assertFalse(list.get(1).isAtSecondaryCursor());
+        assertEquals(3, find.countMatches(node));
+        // the primary cursor is at the root, which doesn't match.
+        assertEquals(4, node.atAnyCursor().size());
+
+        // annotations are searched too
+        list.get(1).setAnnotation("red");
+        assertTrue(list.get(1).isAtSecondaryCursor());
+        assertEquals(4, find.countMatches(node));
+
+        list.replaceChild(list.get(0).asCursor(), new JsonNodeValue.Builder<>("green"));
+        assertFalse(list.get(0).isAtSecondaryCursor());
+        assertEquals(3, find.countMatches(node));
+    }
+
+    @Test
+    public void testFindOnlySearchesAppended() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 10_000; i++) {
+            if (i > 0) json.append(",");
+            json.append(i % 10 == 0 ? "\"red\"" : "\"blue\"");
+        }
+        json.append("]");
+        JsonNodeList list = (JsonNodeList) JsonNode.parseJson(json.toString());
+        FindCursor find = new FindCursor("red");
+        list.rootInfo.setSecondaryCursors(find);
+        assertEquals(1_000, find.countMatches(list));
+        assertEquals(list.atAnyCursor().size(), find.countCursors(list.rootInfo.userCursor));
+
+        list.appendValues(java.util.List.of("red", "green", "red"));
+        // only the new ones are left to look at, so one short slice is enough.
+        assertTrue(list.get(10_002).isAtSecondaryCursor());
+        assertFalse(find.isSearching());
+        assertEquals(1_002, find.countMatches(list));
+        assertEquals(list.atAnyCursor().size(), find.countCursors(list.rootInfo.userCursor));
+        // they're found in order.
+        list.rootInfo.setPrimaryCursor(list.get(9_990).asCursor());
+        list.cursorNextCursor();
+        assertEquals("[10000]", list.rootInfo.userCursor.toString());
+    }
+
+    @Test
+    public void testNextCursorInFindFollowsSort() throws Exception {
+        JsonNode node = JsonNode.parseJson("[\"b red\", \"x\", \"a red\", \"c red\"]");
+        node.rootInfo.setSecondaryCursors(new FindCursor("red", true, false, true, true, false, false));
+        node.sort(new Sorter(false, false, false, new java.util.ArrayList<>(), false));
+        // shown as: "a red", "b red", "c red", "x"
+        node.cursorNextCursor();
+        assertEquals("[2]", node.rootInfo.userCursor.toString());
+        node.cursorNextCursor();
+        assertEquals("[0]", node.rootInfo.userCursor.toString());
+        node.cursorNextCursor();
+        assertEquals("[3]", node.rootInfo.userCursor.toString());
+        node.cursorPrevCursor();
+        assertEquals("[0]", node.rootInfo.userCursor.toString());
+        // from "x", the previous one is the last match.
+        node.rootInfo.setPrimaryCursor(((JsonNodeList) node).get(1).asCursor());
+        node.cursorPrevCursor();
+        assertEquals("[3]", node.rootInfo.userCursor.toString());
+    }
+
+    @Test
+    public void testIncrementalFind() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) json.append(",");
+            json.append("{\"name\": \"item ").append(i).append("\"}");
+        }
+        json.append("]");
+        JsonNode node = JsonNode.parseJson(json.toString());
+        FindCursor all = new FindCursor("item 1", true, true, true, true, false, false);
+        int expected = all.countMatches(node);
+        assertEquals(1111, expected);
+
+        FindCursor find = new FindCursor("item 1", true, true, true, true, false, false);
+        find.startSearch(node, null);
+        // it only looks at a few nodes at a time, and highlights what it found so far.
+        assertFalse(find.findSome(0));
+        assertTrue(find.isSearching());
+        assertTrue(find.countMatchesSoFar() < expected);
+        while (!find.findSome(0)) {}
+        assertEquals(expected, find.countMatchesSoFar());
+
+        // typing more narrows down the previous results
+        FindCursor narrower = new FindCursor("item 12", true, true, true, true, false, false);
+        narrower.startSearch(node, find);
+        while (!narrower.findSome(0)) {}
+        assertEquals(111, narrower.countMatchesSoFar());
+        assertEquals(new FindCursor("item 12", true, true, true, true, false, false).countMatches(node),
+                narrower.countMatches(node));
+
+        // if the tree changes during a search, it starts over.
+        FindCursor again = new FindCursor("item 1", true, true, true, true, false, false);
+        again.startSearch(node, null);
+        again.findSome(0);
+        ((JsonNodeList) node).appendValues(java.util.List.of("item 1 again"));
+        while (!again.findSome(0)) {}
+        assertEquals(expected + 1, again.countMatchesSoFar());
+    }
+
     @Test
     public void testPrevCursorInFind() throws Exception {
         JsonNode node = JsonNode.parseJson(
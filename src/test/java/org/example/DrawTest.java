@@ -418,4 +418,210 @@ public class DrawTest {
 
         assertEquals(expected, got);
     }
+
+    @Test
+    public void testScrolledMatchesFull() throws Exception {
+        // Drawing a scrolled window should look the same as that part of a full drawing,
+        // even though the parts above and below the window aren't really drawn.
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 30; i++) {
+            if (i > 0) json.append(",");
+            json.append("{\"id\": ").append(i)
+                .append(", \"wait_sec\": ").append(i * 100)
+                .append(", \"text\": \"").append("word ".repeat(i % 7 * 3)).append("\"")
+                .append(", \"tags\": [\"a\", {\"b\": [1, 2]}]}");
+        }
+        json.append("]");
+        JsonNode node = JsonNode.parseJson(json.toString());
+        // unfold some strings so they wrap
+        for (int i = 0; i < 30; i += 2) {
+            ((JsonNodeMap) ((JsonNodeList) node).get(i)).getChild("text").folded = false;
+        }
+        // fold a record, pin something inside another folded one.
+        ((JsonNodeList) node).get(4).folded = true;
+        ((JsonNodeList) node).get(6).folded = true;
+        ((JsonNodeMap) ((JsonNodeList) node).get(6)).getChild("id").setPinned(true);
+        for (int i = 0; i < 57; i++) node.cursorDown();
+
+        Screen tall = setupScreen(30, 500);
+        makeDrawer().printJsonTree(tall.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER, 0, node, null);
+        String[] full = extractAsString(tall).split("\n");
+        Drawer fullDrawer = makeDrawer();
+        fullDrawer.printJsonTree(tall.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER, 0, node, null);
+        int cursorLine = fullDrawer.getCursorLineLastTime();
+
+        int height = 12;
+        for (int scroll = 0; scroll < 300; scroll += 7) {
+            Screen screen = setupScreen(30, height);
+            Drawer d = makeDrawer();
+            d.printJsonTree(screen.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER.withRelativeRow(-scroll), 0, node, null);
+            String[] got = extractAsString(screen).split("\n");
+            for (int row = 0; row < height; row++) {
+                assertEquals(full[scroll + row], got[row], "scroll " + scroll + ", row " + row);
+            }
+            assertEquals(cursorLine - scroll, d.getCursorLineLastTime(), "scroll " + scroll);
+        }
+    }
+
+    // Draws the tree scrolled by various amounts, and checks each window against a full drawing.
+    private static void assertScrolledMatchesFull(JsonNode node, int width, int height) throws Exception {
+        Screen tall = setupScreen(width, 500);
+        Drawer fullDrawer = makeDrawer();
+        fullDrawer.checkHeights = true;
+        fullDrawer.printJsonTree(tall.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER, 0, node, null);
+        String[] full = extractAsString(tall).split("\n");
+        int cursorLine = fullDrawer.getCursorLineLastTime();
+        for (int scroll = 0; scroll < 300; scroll += 13) {
+            Screen screen = setupScreen(width, height);
+            Drawer d = makeDrawer();
+            d.printJsonTree(screen.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER.withRelativeRow(-scroll), 0, node, null);
+            String[] got = extractAsString(screen).split("\n");
+            for (int row = 0; row < height; row++) {
+                assertEquals(full[scroll + row], got[row], "scroll " + scroll + ", row " + row);
+            }
+            assertEquals(cursorLine - scroll, d.getCursorLineLastTime(), "scroll " + scroll);
+        }
+    }
+
+    @Test
+    public void testScrolledAfterChanges() throws Exception {
+        // The line counts are cached in the nodes: changing the tree must not leave stale ones.
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 40; i++) {
+            if (i > 0) json.append(",");
+            json.append("{\"id\": ").append(i)
+                .append(", \"text\": \"").append("word ".repeat(i % 5 * 4)).append("\"")
+                .append(", \"tags\": [\"a\", {\"b\": [1, 2]}]}");
+        }
+        json.append("]");
+        JsonNodeList node = (JsonNodeList) JsonNode.parseJson(json.toString());
+        for (int i = 0; i < 40; i++) node.cursorDown();
+        assertScrolledMatchesFull(node, 30, 12);
+
+        node.get(3).setFolded(true);
+        assertScrolledMatchesFull(node, 30, 12);
+        ((JsonNodeMap) node.get(8)).getChild("text").setFolded(false);
+        assertScrolledMatchesFull(node, 30, 12);
+        ((JsonNodeMap) node.get(3)).getChild("id").setPinned(true);
+        assertScrolledMatchesFull(node, 30, 12);
+        ((JsonNodeMap) node.get(25)).getChild("tags").setAnnotation("some tags");
+        assertScrolledMatchesFull(node, 30, 12);
+        node.sort(new Sorter(true, false, false, java.util.List.of("text"), false));
+        assertScrolledMatchesFull(node, 30, 12);
+        node.get(30).setFoldedLevels(1);
+        assertScrolledMatchesFull(node, 30, 12);
+        // a different width wraps the strings differently.
+        assertScrolledMatchesFull(node, 24, 12);
+    }
+
+    @Test
+    public void testMeasuredMatchesDrawn() throws Exception {
+        // Every kind of node, each drawn with the drawer checking that it takes
+        // as many lines as measureSubtree says.
+        JsonNode root = JsonNode.parseJson("{" +
+                "\"records\": [{\"id\": 1, \"wait_sec\": 300, \"ok\": true, \"gone\": null}," +
+                "              {\"id\": 2, \"text\": \"" + "long words ".repeat(12) + "\", \"nested\": {\"deep\": [1, [2, 3], {}]}}]," +
+                "\"numbers\": [5, 7.5, 10, 5000000000]," +
+                "\"color\": \"#ff8000\"," +
+                "\"empty_list\": []," +
+                "\"empty_map\": {}," +
+                "\"folded\": {\"a\": {\"b\": 1}, \"c\": [1, 2]}," +
+                "\"pinned_in_fold\": {\"a\": 1, \"b\": [1, 2, {\"c\": \"x\"}]}," +
+                "\"folded_list\": [1, 2, 3]," +
+                "\"scores\": {\"a\": 1, \"b\": 2}" +
+                "}");
+        JsonNodeMap map = (JsonNodeMap) root;
+        JsonNodeList records = (JsonNodeList) map.getChild("records");
+        ((JsonNodeMap) records.get(1)).getChild("text").setFolded(false);
+        map.getChild("color").setFolded(false);
+        map.getChild("folded").setFolded(true);
+        map.getChild("folded_list").setFolded(true);
+        map.getChild("pinned_in_fold").setFolded(true);
+        ((JsonNodeList) ((JsonNodeMap) map.getChild("pinned_in_fold")).getChild("b")).get(2).setPinned(true);
+        map.getChild("numbers").setAnnotation("some numbers");
+        // aggregates: synthetic maps with comments, and synthetic values.
+        root.rootInfo.setPrimaryCursor(records.whereIAm);
+        new Operation.AggUniqueFields(root, true).run();
+        root.rootInfo.setPrimaryCursor(map.getChild("numbers").whereIAm);
+        new Operation.OpAggTotal(root).run();
+        root.rootInfo.setPrimaryCursor(map.getChild("scores").whereIAm);
+        new Operation.OpAggTotal(root).run();
+        assertNotNull(records.aggregate);
+        assertNotNull(map.getChild("numbers").aggregate);
+        assertNotNull(map.getChild("scores").aggregate);
+
+        for (int width : new int[]{80, 30, 12}) {
+            Screen screen = setupScreen(width, 200);
+            Drawer d = makeDrawer();
+            d.checkHeights = true;
+            int lines = d.printJsonTree(screen.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER, 0, root, null);
+            assertTrue(lines < 200, width + " columns");
+        }
+    }
+
+    @Test
+    public void testDrawOnlyWhatIsShown() throws Exception {
+        // With the cursor at the top, a frame only looks at what fits on the screen,
+        // however long the list is.
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 20_000; i++) {
+            if (i > 0) json.append(",");
+            json.append("{\"id\": ").append(i).append("}");
+        }
+        json.append("]");
+        JsonNodeList node = (JsonNodeList) JsonNode.parseJson(json.toString());
+        Screen screen = setupScreen(30, 12);
+        Drawer d = makeDrawer();
+        d.printJsonTree(screen.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER, 0, node, null);
+        assertEquals(0, d.getCursorLineLastTime());
+        assertTrue(node.nodesMade() <= 12, node.nodesMade() + " nodes");
+
+        // further down, we only measure what's above the cursor.
+        for (int i = 0; i < 100; i++) node.cursorDown();
+        int line = d.lineOfCursor(node, 30);
+        assertTrue(node.nodesMade() < 100, node.nodesMade() + " nodes");
+        d.printJsonTree(screen.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER.withRelativeRow(-line), 0, node, null);
+        assertEquals(0, d.getCursorLineLastTime());
+        assertTrue(node.nodesMade() < 100, node.nodesMade() + " nodes");
+    }
+
+    @Test
+    public void testNodeAtLine() throws Exception {
+        JsonNode node = JsonNode.parseJson("[{\"a\": 1, \"b\": [1, 2]}, \"" + "word ".repeat(20) + "\", {\"c\": 3}]");
+        ((JsonNodeList) node).get(1).setFolded(false);
+        Drawer d = makeDrawer();
+        // [ // 3 entries
+        //   {
+        //     "a": 1
+        //     "b": [ // 2 entries
+        //       1
+        //       2
+        //     ]
+        //   }
+        //   "word word ...     <- wraps to 4 lines at 30 columns
+        assertSame(node, d.nodeAtLine(node, 0, 30));
+        JsonNode first = ((JsonNodeList) node).get(0);
+        assertSame(first, d.nodeAtLine(node, 1, 30));
+        assertSame(((JsonNodeMap) first).getChild("a"), d.nodeAtLine(node, 2, 30));
+        JsonNode b = ((JsonNodeMap) first).getChild("b");
+        assertSame(((JsonNodeList) b).get(1), d.nodeAtLine(node, 5, 30));
+        // closing brackets go to the last thing before them
+        assertSame(((JsonNodeList) b).get(1), d.nodeAtLine(node, 6, 30));
+        assertSame(((JsonNodeList) b).get(1), d.nodeAtLine(node, 7, 30));
+        assertSame(((JsonNodeList) node).get(1), d.nodeAtLine(node, 9, 30));
+        // past the end
+        JsonNode c = ((JsonNodeMap) ((JsonNodeList) node).get(2)).getChild("c");
+        assertSame(c, d.nodeAtLine(node, 1000, 30));
+
+        // every node is found at the line its cursor is drawn on.
+        Screen tall = setupScreen(30, 100);
+        for (int i = 0; i < 9; i++) {
+            Drawer full = makeDrawer();
+            full.printJsonTree(tall.newTextGraphics(), TerminalPosition.TOP_LEFT_CORNER, 0, node, null);
+            int line = d.lineOfCursor(node, 30);
+            assertEquals(full.getCursorLineLastTime(), line);
+            assertSame(node.atCursor(), d.nodeAtLine(node, line, 30));
+            node.cursorDown();
+        }
+    }
 }
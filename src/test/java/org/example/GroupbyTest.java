@@ -439,4 +439,50 @@ public class GroupbyTest {
 
 
 
+
+    @Test
+    public void testGroupbyColumnar() throws Exception {
+        String[] lines = new String[ColumnarList.MIN_ROWS];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "{\"c\": \"" + (i % 3 == 0 ? "London" : "Paris") + "\", \"s\": " + i + "}";
+        }
+        Main main = Main.fromLinesAndVirtual(lines, 40, 20);
+        assertTrue(((JsonNodeList) main.getRoot()).values instanceof ColumnarList);
+
+        main.moveCursorDown(true);
+        main.moveCursorDown(true);
+        // we should now be at the "c"
+        main.actOnKey(GROUPBY_KEY);
+        main.checkInvariants();
+
+        JsonNodeMap groups = (JsonNodeMap) main.getRoot();
+        assertEquals(java.util.List.of("London", "Paris"), groups.getKeysInOrder());
+        assertEquals(334, ((JsonNodeList) groups.getChild("London")).childCount());
+        assertEquals(666, ((JsonNodeList) groups.getChild("Paris")).childCount());
+    }
+
+    @Test
+    public void testGroupbyColumnarAfterChange() throws Exception {
+        String[] lines = new String[ColumnarList.MIN_ROWS];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "{\"c\": \"" + (i % 3 == 0 ? "London" : "Paris") + "\", \"s\": " + i + "}";
+        }
+        Main main = Main.fromLinesAndVirtual(lines, 40, 20);
+        JsonNodeList list = (JsonNodeList) main.getRoot();
+        assertTrue(list.values instanceof ColumnarList);
+        // the column still says "Paris" for this one, but the node doesn't.
+        JsonNodeMap second = (JsonNodeMap) list.get(1);
+        second.replaceChild(second.getChild("c").asCursor(), JsonNode.Builder.fromObject("Berlin"));
+
+        main.moveCursorDown(true);
+        main.moveCursorDown(true);
+        // we should now be at the "c"
+        main.actOnKey(GROUPBY_KEY);
+        main.checkInvariants();
+
+        JsonNodeMap groups = (JsonNodeMap) main.getRoot();
+        assertEquals(java.util.List.of("London", "Berlin", "Paris"), groups.getKeysInOrder());
+        assertEquals(1, ((JsonNodeList) groups.getChild("Berlin")).childCount());
+        assertEquals(665, ((JsonNodeList) groups.getChild("Paris")).childCount());
+    }
 }
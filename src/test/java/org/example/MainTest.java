@@ -1,7 +1,16 @@
 package org.example;
 
+import com.googlecode.lanterna.TerminalSize;
 import com.googlecode.lanterna.input.KeyStroke;
+import com.googlecode.lanterna.terminal.virtual.DefaultVirtualTerminal;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -324,4 +333,175 @@ public class MainTest {
         // we shouldn't throw an exception.. or hang.
     }
 
+    @Test
+    public void testLoadInBackground() throws Exception {
+        for (String name : new String[]{"testdata/list.jsonl", "testdata/list.json", "testdata/users_1k.json"}) {
+            Main main = Main.fromPathStrInBackground(name, new DefaultVirtualTerminal(new TerminalSize(40, 10)));
+            main.display();
+            // we can move around while it loads.
+            main.actOnKey(KeyStroke.fromString("<down>"));
+            while (main.isLoading()) {
+                main.absorbLoaded();
+                main.display();
+            }
+            JsonNode expected = JsonNode.parse(Paths.get(name));
+            assertEquals(expected.getValue(), main.getRoot().getValue(), name);
+            assertEquals(expected.getAnnotation(), main.getRoot().getAnnotation(), name);
+            main.getRoot().checkInvariants();
+        }
+    }
+
+    @Test
+    public void testLoadJsonlOfLongArraysInBackground(@TempDir Path dir) throws Exception {
+        // the first line is longer than what we look at first, and starts with "[".
+        Path file = dir.resolve("arrays.jsonl");
+        String record = "[" + "1234567890,".repeat(1000) + "0]\n";
+        Files.writeString(file, record.repeat(3));
+        Main main = Main.fromPathStrInBackground(file.toString(), new DefaultVirtualTerminal(new TerminalSize(40, 10)));
+        while (main.isLoading()) {
+            main.absorbLoaded();
+        }
+        assertEquals(3, main.getRoot().childCount());
+        assertEquals("JSONL", main.getRoot().getAnnotation());
+    }
+
+    @Test
+    public void testLoadBigJsonlInBackground(@TempDir Path dir) throws Exception {
+        // a few chunks' worth, so the lines are parsed in parallel.
+        Path file = dir.resolve("records.jsonl");
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 0; i < 60_000; i++) {
+            jsonl.append("{\"id\": ").append(i).append(", \"name\": \"user").append(i % 7).append("\"}\n");
+        }
+        Files.writeString(file, jsonl.toString());
+        Main main = Main.fromPathStrInBackground(file.toString(), new DefaultVirtualTerminal(new TerminalSize(40, 10)));
+        while (main.isLoading()) {
+            main.absorbLoaded();
+        }
+        assertEquals(JsonNode.parse(file).getValue(), main.getRoot().getValue());
+        // once it's all in, the records are stored by column like when we parse in one go.
+        assertInstanceOf(ColumnarList.class, ((JsonNodeList) main.getRoot()).values);
+        main.getRoot().checkInvariants();
+    }
+
+    @Test
+    public void testFollow(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("log.jsonl");
+        Files.writeString(file, "{\"n\": 1}\n{\"n\": 2}\n{\"n\": ");
+        Main main = Main.fromPathStrFollowing(file.toString(), new DefaultVirtualTerminal(new TerminalSize(40, 10)));
+        main.display();
+        // the last line isn't finished yet
+        assertEquals(2, ((JsonNodeList)main.getRoot()).childCount());
+        assertEquals("JSONL", main.getRoot().getAnnotation());
+        main.actOnKey(KeyStroke.fromString("<down>"));
+
+        Files.writeString(file, "3}\n{\"n\": 4}\n", StandardOpenOption.APPEND);
+        assertTrue(main.absorbFollowed());
+        main.display();
+        JsonNodeList root = (JsonNodeList)main.getRoot();
+        assertEquals(4, root.childCount());
+        assertEquals(3, ((JsonNodeMap)root.get(2)).getChild("n").getValue());
+        assertEquals("[0]", main.getRoot().rootInfo.userCursor.toString());
+        assertFalse(main.absorbFollowed());
+
+        // start over: only what's in the file now is shown.
+        Files.writeString(file, "{\"n\": 5}\n");
+        assertTrue(main.absorbFollowed());
+        main.display();
+        root = (JsonNodeList)main.getRoot();
+        assertEquals(1, root.childCount());
+        assertEquals(5, ((JsonNodeMap)root.get(0)).getChild("n").getValue());
+        Files.writeString(file, "{\"n\": 6}\n", StandardOpenOption.APPEND);
+        assertTrue(main.absorbFollowed());
+        assertEquals(2, ((JsonNodeList)main.getRoot()).childCount());
+        main.getRoot().checkInvariants();
+    }
+
+    @Test
+    public void testFollowThroughGroupbyAndUndo(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("log.jsonl");
+        Files.writeString(file, "{\"c\": \"a\"}\n{\"c\": \"b\"}\n");
+        Main main = Main.fromPathStrFollowing(file.toString(), new DefaultVirtualTerminal(new TerminalSize(80, 10)));
+        main.moveCursorDown(true);
+        main.moveCursorDown(true);
+        main.actOnKey(KeyStroke.fromString("b"));
+        assertInstanceOf(JsonNodeMap.class, main.getRoot());
+
+        // new lines still get read, they go to the list from before the groupby.
+        Files.writeString(file, "{\"c\": \"a\"}\n", StandardOpenOption.APPEND);
+        assertTrue(main.absorbFollowed());
+        main.display();
+        assertTrue(main.getTestViewOfScreen().contains("undo"));
+        main.actOnKey(KeyStroke.fromString("Z"));
+        assertEquals(3, ((JsonNodeList)main.getRoot()).childCount());
+
+        Files.writeString(file, "{\"c\": \"c\"}\n", StandardOpenOption.APPEND);
+        assertTrue(main.absorbFollowed());
+        assertEquals(4, ((JsonNodeList)main.getRoot()).childCount());
+        main.getRoot().checkInvariants();
+    }
+
+    @Test
+    public void testLoadInBackgroundThroughGroupbyAndUndo(@TempDir Path dir) throws Exception {
+        // more than the loader queues up, so it's still loading after the first batches.
+        Path file = dir.resolve("big.jsonl");
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 0; i < 40_000; i++) {
+            jsonl.append("{\"c\": ").append(i % 3).append("}\n");
+        }
+        Files.writeString(file, jsonl.toString());
+        Main main = Main.fromPathStrInBackground(file.toString(), new DefaultVirtualTerminal(new TerminalSize(40, 10)));
+        while (main.getRoot().childCount() == 0) {
+            main.absorbLoaded();
+        }
+        assertTrue(main.isLoading());
+        main.moveCursorDown(true);
+        main.moveCursorDown(true);
+        main.actOnKey(KeyStroke.fromString("b"));
+        assertInstanceOf(JsonNodeMap.class, main.getRoot());
+        while (main.isLoading()) {
+            main.absorbLoaded();
+        }
+        main.actOnKey(KeyStroke.fromString("Z"));
+        assertEquals(40_000, main.getRoot().childCount());
+        main.getRoot().checkInvariants();
+    }
+
+    @Test
+    public void testDisplayLooksOnlyAtTheScreen() throws Exception {
+        // A frame shouldn't go through the whole document, even with the cursor
+        // at the top where the closing bracket is far below.
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 20_000; i++) {
+            if (i > 0) json.append(",");
+            json.append("{\"n\": ").append(i).append("}");
+        }
+        json.append("]");
+        Main main = Main.fromLinesAndVirtual(new String[]{json.toString()}, 40, 10);
+        JsonNodeList root = (JsonNodeList) main.getRoot();
+        main.display();
+        assertTrue(root.nodesMade() <= 10, root.nodesMade() + " nodes");
+
+        main.actOnKey(KeyStroke.fromString("<down>"));
+        main.actOnKey(KeyStroke.fromString("<down>"));
+        main.display();
+        assertTrue(root.nodesMade() <= 10, root.nodesMade() + " nodes");
+    }
+
+    @Test
+    public void testLazyFileParsesOnlyWhatIsShown(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("big.jsonl");
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            jsonl.append("{\"n\": ").append(i).append(", \"text\": \"line ").append(i).append("\"}\n");
+        }
+        Files.writeString(file, jsonl.toString());
+        Main main = Main.fromPathStr(file.toString(), new DefaultVirtualTerminal(new TerminalSize(40, 10)), true);
+        JsonNodeList root = (JsonNodeList) main.getRoot();
+        MappedJsonList values = (MappedJsonList) root.values;
+        assertEquals(0, values.getParseCount());
+        main.display();
+        assertTrue(values.getParseCount() <= 10, values.getParseCount() + " entries parsed");
+    }
+
 }
@@ -1,6 +1,15 @@
 package org.example;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -70,6 +79,60 @@ public class ParserTest {
         assertTrue(json instanceof JsonNodeList);
     }
 
+    // enough lines that we parse them in parallel
+    @Test
+    public void testParseBigJsonLKeepsOrder() throws Exception {
+        String[] lines = new String[25_000];
+        for (int i=0; i<lines.length; i++) {
+            lines[i] = "{ \"id\": " + i + " }";
+        }
+        JsonNode json = JsonNode.parseLines(lines);
+        assertTrue(json instanceof JsonNodeList);
+        JsonNodeList list = (JsonNodeList) json;
+        assertEquals(lines.length, list.childCount());
+        for (int i=0; i<lines.length; i+=997) {
+            assertEquals(i, ((JsonNodeMap)list.get(i)).getChild("id").getValue());
+        }
+    }
+
+    @Test
+    public void testParseBigJsonFallsBackToWholeDocument() throws Exception {
+        String[] lines = new String[25_002];
+        lines[0] = "[";
+        for (int i=1; i<lines.length-1; i++) {
+            lines[i] = i + ",";
+        }
+        lines[lines.length-1] = "0 ]";
+        JsonNode json = JsonNode.parseLines(lines);
+        assertTrue(json instanceof JsonNodeList);
+        assertEquals("", json.getAnnotation());
+        assertEquals(lines.length-1, ((JsonNodeList)json).childCount());
+    }
+
+    // Several pretty-printed values one after the other.
+    @Test
+    public void testParseConcatenatedJson() throws Exception {
+        JsonNode json = JsonNode.parseLines(new String[] {
+                "{",
+                "  \"name\": \"foo\"",
+                "}",
+                "{",
+                "  \"name\": \"bar\"",
+                "}"
+        });
+        assertTrue(json instanceof JsonNodeList);
+        JsonNodeList list = (JsonNodeList) json;
+        assertEquals(2, list.childCount());
+        assertEquals("bar", ((JsonNodeMap)list.get(1)).getChild("name").getValue());
+    }
+
+    @Test
+    public void testSniffJsonL() throws Exception {
+        assertTrue(JsonNode.looksLikeJsonl(new String[] {"{ \"a\": 1 }", "", "[1, 2]"}));
+        assertFalse(JsonNode.looksLikeJsonl(new String[] {"{", "\"a\": 1", "}"}));
+        assertFalse(JsonNode.looksLikeJsonl(new String[] {"", ""}));
+    }
+
     @Test
     public void testParseSingleLine() throws Exception {
         JsonNode json = JsonNode.parseLines(new String[] {
@@ -119,6 +182,285 @@ public class ParserTest {
         map.getChild("null_value");
     }
 
+    @Test
+    public void testParseFileJson() throws Exception {
+        JsonNode json = JsonNode.parse(Paths.get("testdata/hello.json"));
+        assertTrue(json instanceof JsonNodeMap);
+        assertEquals("", json.getAnnotation());
+    }
+
+    @Test
+    public void testParseFileJsonL() throws Exception {
+        JsonNode json = JsonNode.parse(Paths.get("testdata/list.jsonl"));
+        assertTrue(json instanceof JsonNodeList);
+        assertEquals("JSONL", json.getAnnotation());
+        assertEquals(3, ((JsonNodeList)json).childCount());
+        assertEquals("Bob", ((JsonNodeMap)((JsonNodeList)json).get(1)).getChild("name").getValue());
+    }
+
+    @Test
+    public void testParseFileWithComments() throws Exception {
+        JsonNode json = JsonNode.parse(Paths.get("testdata/comments.jsonc"));
+        assertTrue(json instanceof JsonNodeMap);
+    }
+
+    @Test
+    public void testParseFileTopLevelList() throws Exception {
+        JsonNode json = JsonNode.parse(Paths.get("testdata/list.json"));
+        // A single top-level array is plain JSON, not JSONL.
+        assertTrue(json instanceof JsonNodeList);
+        assertEquals("", json.getAnnotation());
+    }
+
+    @Test
+    public void testParseFileLazy() throws Exception {
+        for (String name : new String[]{"testdata/list.json", "testdata/list.jsonl", "testdata/users_1k.json"}) {
+            JsonNode eager = JsonNode.parse(Paths.get(name));
+            JsonNode lazy = JsonNode.parse(Paths.get(name), true);
+            assertEquals(eager.getAnnotation(), lazy.getAnnotation(), name);
+            assertEquals(eager.getValue(), lazy.getValue(), name);
+        }
+        JsonNode lazy = JsonNode.parse(Paths.get("testdata/list.json"), true);
+        assertTrue(((JsonNodeList)lazy).values instanceof MappedJsonList);
+        assertEquals("Charlie", ((JsonNodeMap)((JsonNodeList)lazy).get(2)).getChild("name").getValue());
+    }
+
+    @Test
+    public void testParseFileLazyFallsBack() throws Exception {
+        // Single object, and comments: the lazy index doesn't apply, parse normally.
+        for (String name : new String[]{"testdata/hello.json", "testdata/comments.jsonc"}) {
+            JsonNode eager = JsonNode.parse(Paths.get(name));
+            JsonNode lazy = JsonNode.parse(Paths.get(name), true);
+            assertEquals(eager.getValue(), lazy.getValue(), name);
+        }
+    }
+
+    @Test
+    public void testParseBigJsonlStream(@TempDir Path dir) throws Exception {
+        // Several chunks' worth, so they're parsed in parallel.
+        StringBuilder jsonl = new StringBuilder();
+        int count = 0;
+        while (jsonl.length() < 3 * ChunkedParser.CHUNK_BYTES) {
+            jsonl.append("{\"n\": ").append(count).append(", \"text\": \"line ").append(count).append("\"}\n");
+            count++;
+        }
+        String text = jsonl.toString();
+        Path file = dir.resolve("big.jsonl");
+        Files.writeString(file, text);
+        JsonNode json = JsonNode.parse(file);
+        assertEquals("JSONL", json.getAnnotation());
+        assertEquals(JsonNode.parseLines(text.split("\n")).getValue(), json.getValue());
+        assertEquals(count, ((JsonNodeList) json).childCount());
+
+        // A value that spans lines, or a comment, after the first chunk: same values
+        // as reading it all in one go.
+        for (String odd : new String[]{"{\"n\":\n -1,\n\"text\": \"spans lines\"}\n", "/* a\n\"comment\" */\n"}) {
+            String withOdd = text + odd + text;
+            Files.writeString(file, withOdd);
+            JsonNode expected;
+            try (com.fasterxml.jackson.core.JsonParser parser = JsonNode.READER.createParser(withOdd)) {
+                java.util.List<Object> all = new java.util.ArrayList<>();
+                var it = JsonNode.READER.readValues(parser);
+                while (it.hasNextValue()) all.add(it.nextValue());
+                expected = JsonNode.fromObject(all, null, new Cursor(), null);
+            }
+            assertEquals(expected.getValue(), JsonNode.parse(file).getValue(), odd);
+            try (java.io.InputStream in = Files.newInputStream(file)) {
+                assertEquals(expected.getValue(), ChunkedParser.readAll(in, JsonNode.READER, 4), odd);
+            }
+        }
+        // in chunks, even if this machine has only one core.
+        Files.writeString(file, text);
+        try (java.io.InputStream in = Files.newInputStream(file)) {
+            assertEquals(json.getValue(), ChunkedParser.readAll(in, JsonNode.READER, 4));
+        }
+    }
+
+    @Test
+    public void testParseLinesNonAscii() throws Exception {
+        // the lines go through ChunkedParser as UTF-8.
+        JsonNodeList json = (JsonNodeList) JsonNode.parseLines(new String[]{"{\"a\": \"héllo ✓\"}", "", "{\"a\": 2}"});
+        assertEquals("JSONL", json.getAnnotation());
+        assertEquals("héllo ✓", ((JsonNodeMap) json.get(0)).getChild("a").getValue());
+        assertEquals(2, json.childCount());
+    }
+
+    @Test
+    public void testSniff(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("file.json");
+        // a first line longer than what we look at first.
+        String longArray = "[" + "1234567890,".repeat(1000) + "0]";
+        String[][] cases = {
+                {"{\"a\": 1}\n{\"a\": 2}\n", "JSONL"},
+                {longArray + "\n" + longArray + "\n", "JSONL"},
+                {"\n" + longArray + "\n" + longArray, "JSONL"},
+                {longArray, "ARRAY"},
+                {longArray + "\n", "ARRAY"},
+                {"[\n  1,\n  2\n]\n", "ARRAY"},
+                {"{\"a\": " + longArray + "}", "OTHER"},
+                {"{\n  \"a\": 1\n}\n", "OTHER"},
+        };
+        for (String[] c : cases) {
+            Files.writeString(file, c[0]);
+            assertEquals(FileInput.Format.valueOf(c[1]), FileInput.sniff(file), c[0].substring(0, Math.min(20, c[0].length())));
+        }
+    }
+
+    @Test
+    public void testParseGzip(@TempDir Path dir) throws Exception {
+        for (String name : new String[]{"testdata/list.jsonl", "testdata/users_1k.json"}) {
+            Path gz = dir.resolve("compressed.json");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+                Files.copy(Paths.get(name), out);
+            }
+            JsonNode expected = JsonNode.parse(Paths.get(name));
+            for (boolean lazy : new boolean[]{false, true}) {
+                JsonNode json = JsonNode.parse(gz, lazy);
+                assertEquals(expected.getAnnotation(), json.getAnnotation(), name);
+                assertEquals(expected.getValue(), json.getValue(), name);
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotCache(@TempDir Path dir) throws Exception {
+        SnapshotCache cache = new SnapshotCache(dir.resolve("cache"));
+        for (String name : new String[]{"testdata/hello.json", "testdata/list.jsonl", "testdata/users_1k.json", "testdata/unicode.json"}) {
+            Path path = Paths.get(name);
+            assertNull(cache.load(path), name);
+            JsonNode parsed = cache.parse(path);
+            JsonNode loaded = cache.load(path);
+            assertNotNull(loaded, name);
+            assertEquals(parsed.getClass(), loaded.getClass(), name);
+            assertEquals(parsed.getAnnotation(), loaded.getAnnotation(), name);
+            assertEquals(parsed.getValue(), loaded.getValue(), name);
+        }
+        // the file changed: the snapshot doesn't apply anymore.
+        Path copy = dir.resolve("copy.json");
+        Files.copy(Paths.get("testdata/list.json"), copy);
+        cache.parse(copy);
+        assertTrue(((JsonNodeList)cache.load(copy)).values instanceof SnapshotCache.SnapshotList);
+        Files.writeString(copy, "[1, 2, 3, 4]");
+        assertNull(cache.load(copy));
+        assertEquals(4, ((JsonNodeList)cache.parse(copy)).childCount());
+    }
+
+    @Test
+    public void testRecordsShareShape() throws Exception {
+        JsonNodeList json = (JsonNodeList) JsonNode.parseLines(new String[] {
+                "{ \"name\": \"foo\", \"age\": 12 }",
+                "{ \"name\": \"bar\", \"age\": 13 }",
+                "{ \"age\": 14, \"name\": \"baz\" }"
+        });
+        ShapedMap first = (ShapedMap) json.values.get(0);
+        ShapedMap second = (ShapedMap) json.values.get(1);
+        ShapedMap third = (ShapedMap) json.values.get(2);
+        assertSame(first.getShape(), second.getShape());
+        assertNotSame(first.getShape(), third.getShape());
+        assertEquals("bar", ((JsonNodeMap) json.get(1)).getChild("name").getValue());
+        assertEquals(java.util.List.of("age", "name"), ((JsonNodeMap) json.get(2)).getKeysInOrder());
+    }
+
+    @Test
+    public void testColumnarStorage() throws Exception {
+        String[] lines = new String[ColumnarList.MIN_ROWS + 1];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "{ \"id\": " + (i == 7 ? "5000000000" : i) + ", \"score\": " + (i % 3 == 0 ? "null" : i + 0.5)
+                    + ", \"ok\": " + (i % 2 == 0) + ", \"color\": \"" + (i % 4 == 0 ? "red" : "blue") + "\""
+                    + ", \"tags\": [" + i + "] }";
+        }
+        JsonNodeList json = (JsonNodeList) JsonNode.parseLines(lines);
+        assertTrue(json.values instanceof ColumnarList);
+        // Same values as a plain Jackson parse, down to Integer vs Long.
+        com.fasterxml.jackson.databind.ObjectMapper plain = new com.fasterxml.jackson.databind.ObjectMapper();
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(plain.readValue(lines[i], Object.class), json.values.get(i));
+        }
+        assertEquals(5000000000L, ((JsonNodeMap) json.get(7)).getChild("id").getValue());
+        assertEquals(8, ((JsonNodeMap) json.get(8)).getChild("id").getValue());
+        assertNull(((JsonNodeMap) json.get(9)).getChild("score").getValue());
+        assertEquals(java.util.List.of("id", "score", "ok", "color", "tags"), ((JsonNodeMap) json.get(0)).getKeysInOrder());
+
+        // Short lists, or records with different keys, stay as they are.
+        assertFalse(((JsonNodeList) JsonNode.parseLines(java.util.Arrays.copyOf(lines, 10))).values instanceof ColumnarList);
+        lines[3] = "{ \"id\": 3 }";
+        assertFalse(((JsonNodeList) JsonNode.parseLines(lines)).values instanceof ColumnarList);
+    }
+
+    @Test
+    public void testUnboxedValues() throws Exception {
+        JsonNodeList json = (JsonNodeList) JsonNode.parseJson("[1, 5000000000, 2.5, true, \"3\", \"x\", null]");
+        assertEquals(1L, ((JsonNodeValue.OfLong) json.get(0)).longValue());
+        assertEquals(1.0, ((JsonNodeValue<?>) json.get(0)).doubleValue());
+        // the node gives back the type the parser made.
+        assertEquals(Integer.valueOf(1), json.get(0).getValue());
+        assertEquals(5000000000L, ((JsonNodeValue.OfLong) json.get(1)).longValue());
+        assertEquals(Long.valueOf(5000000000L), json.get(1).getValue());
+        assertEquals(2.5, ((JsonNodeValue.OfDouble) json.get(2)).doubleValue());
+        assertEquals(2.5, json.get(2).getValue());
+        assertTrue(((JsonNodeValue.OfBoolean) json.get(3)).booleanValue());
+        assertEquals(Boolean.TRUE, json.get(3).getValue());
+        assertTrue(((JsonNodeValue<?>) json.get(0)).isNumber());
+        assertFalse(((JsonNodeValue<?>) json.get(3)).isNumber());
+        assertFalse(((JsonNodeValue<?>) json.get(4)).isNumber());
+        assertFalse(((JsonNodeValue<?>) json.get(6)).isNumber());
+
+        AggOpBasicStats stats = new AggOpBasicStats();
+        for (int i = 0; i < 5; i++) {
+            stats.visit(json.get(i));
+        }
+        // "3" is a string, but it holds a number so it counts as one.
+        assertEquals(AggOpBasicStats.Unit.NUMBER, stats.getUnit());
+        assertEquals(4, stats.getCount(AggOpBasicStats.Unit.NUMBER));
+        assertEquals(1.0, stats.getMin(AggOpBasicStats.Unit.NUMBER));
+        assertEquals(5000000000.0, stats.getMax(AggOpBasicStats.Unit.NUMBER));
+        assertEquals(5000000006.5, stats.getSum(AggOpBasicStats.Unit.NUMBER));
+    }
+
+    @Test
+    public void testDuplicateKeys() throws Exception {
+        // Same as Jackson's LinkedHashMap: the last value wins, the first position stays.
+        JsonNodeMap json = (JsonNodeMap) JsonNode.parseJson("{ \"a\": 1, \"b\": 2, \"a\": 3 }");
+        assertEquals(java.util.List.of("a", "b"), json.getKeysInOrder());
+        assertEquals(3, json.getChild("a").getValue());
+        StringBuilder big = new StringBuilder("{");
+        for (int i = 0; i < 40; i++) {
+            big.append("\"k").append(i % 20).append("\": ").append(i).append(", ");
+        }
+        big.append("\"last\": 0 }");
+        json = (JsonNodeMap) JsonNode.parseJson(big.toString());
+        assertEquals(21, json.childCount());
+        assertEquals(25, json.getChild("k5").getValue());
+    }
+
+    @Test
+    public void testMappedJsonListScanner() throws Exception {
+        String text = "[ {\"a\": \"]\\\"}\"}, [1, [2]] ,3,\"x\" ]";
+        MappedJsonList.Scanner scanner = new MappedJsonList.Scanner();
+        for (int i = 0; i < text.length(); i++) {
+            assertTrue(scanner.accept((byte) text.charAt(i), i));
+        }
+        assertTrue(scanner.finish(text.length()));
+        assertEquals(4, scanner.count);
+        String[] expected = {"{\"a\": \"]\\\"}\"}", "[1, [2]]", "3", "\"x\""};
+        for (int i = 0; i < 4; i++) {
+            int start = (int) scanner.starts[i];
+            assertEquals(expected[i], text.substring(start, start + scanner.lengths[i]));
+        }
+    }
+
+    @Test
+    public void testMappedJsonListScannerRejectsHugeElements() throws Exception {
+        // "[{" and then, 3GB later, "}]": the element is too big to parse on its own.
+        MappedJsonList.Scanner scanner = new MappedJsonList.Scanner();
+        long far = 3_000_000_000L;
+        assertTrue(scanner.accept((byte) '[', 0));
+        assertTrue(scanner.accept((byte) '{', 1));
+        assertTrue(scanner.accept((byte) '}', far));
+        IOException iox = assertThrows(IOException.class, () -> scanner.accept((byte) ']', far + 1));
+        assertTrue(iox.getMessage().contains("too big"), iox.getMessage());
+    }
+
     @Test
     public void testParseNormalString() throws Exception {
         JsonNode json = JsonNode.parseJson("\"hello\"");
@@ -0,0 +1,108 @@
+package org.example;
+
+import org.example.cursor.PathCursor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for --print, which streams instead of building the tree.
+public class PathPrinterTest {
+
+    // What --print used to do: load the whole thing and print the selected values.
+    private static String printFromTree(Path file, String path) throws Exception {
+        JsonNode root = JsonNode.parse(file);
+        List<JsonNode> nodes = new ArrayList<>();
+        PathCursor selected = new PathCursor(path);
+        if (selected.selects(root.asCursor(), root.asCursor())) nodes.add(root);
+        selected.addAllNodes(root.asCursor(), nodes);
+        StringBuilder ret = new StringBuilder();
+        for (JsonNode n : nodes) {
+            Object value = n.getValue();
+            ret.append(null == value ? "null" : value.toString()).append(System.lineSeparator());
+        }
+        return ret.toString();
+    }
+
+    private static String print(Path file, String path) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        PathPrinter.print(file, path, out);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameAsTree(Path file, String... paths) throws Exception {
+        for (String path : paths) {
+            assertEquals(printFromTree(file, path), print(file, path), file + " " + path);
+        }
+    }
+
+    @Test
+    public void testSameAsTree() throws Exception {
+        assertSameAsTree(Paths.get("testdata/hello.json"),
+                ".greeting", ".players[*].name", ".players[1]", ".recording.*", "..name",
+                ".players[?(@.score > 10)].name", ".count_to_five[?(@ >= 3)]", ".nothing.here", "");
+        assertSameAsTree(Paths.get("testdata/list.jsonl"),
+                "[*].name", "[1]", "..name", "[?(@.category == 'guest')].age", "[*].pet.likes", "");
+        // one long line
+        assertSameAsTree(Paths.get("testdata/users_1k.json"),
+                "[*].friends[0].name", "[?(@.age < 20)].city", "[998].id");
+    }
+
+    @Test
+    public void testLongLines(@TempDir Path dir) throws Exception {
+        // JSONL whose first line doesn't fit in the part we look at.
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; line < 3; line++) {
+            text.append("{\"line\": ").append(line).append(", \"words\": [");
+            for (int i = 0; i < 2000; i++) {
+                if (i > 0) text.append(",");
+                text.append("\"w").append(i).append("\"");
+            }
+            text.append("]}\n");
+        }
+        Path jsonl = dir.resolve("long.jsonl");
+        Files.writeString(jsonl, text.toString());
+        assertSameAsTree(jsonl, "[*].line", "[2].words[1999]", "[?(@.line == 1)].line");
+        assertEquals("0\n1\n2\n".replace("\n", System.lineSeparator()), print(jsonl, "[*].line"));
+
+        // a single line, but just one value.
+        Path single = dir.resolve("single.json");
+        Files.writeString(single, text.substring(0, text.indexOf("\n")));
+        assertSameAsTree(single, ".line", ".words[3]", "");
+    }
+
+    @Test
+    public void testLongLinesOfArrays(@TempDir Path dir) throws Exception {
+        // JSONL of arrays, whose first line doesn't fit in the part we look at.
+        String record = "[" + "1234567890,".repeat(1000) + "0]\n";
+        Path jsonl = dir.resolve("arrays.jsonl");
+        Files.writeString(jsonl, record + record.replace("[", "[7,"));
+        assertSameAsTree(jsonl, "[*][0]", "[1][1]", "[0][1000]");
+        assertEquals("1234567890\n7\n".replace("\n", System.lineSeparator()), print(jsonl, "[*][0]"));
+    }
+
+    @Test
+    public void testEmptyAndSmall(@TempDir Path dir) throws Exception {
+        Path empty = dir.resolve("empty.json");
+        Files.writeString(empty, "");
+        assertSameAsTree(empty, "", "[*]");
+        Path one = dir.resolve("one.json");
+        Files.writeString(one, "{\"a\": [1, {\"b\": null}]}\n");
+        assertSameAsTree(one, ".a[1].b", ".a", "..b");
+
+        // no file at all: the empty document.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PathPrinter.print(new ArrayList<>(), "", new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        assertEquals(printFromTree(empty, ""), bytes.toString(StandardCharsets.UTF_8));
+    }
+}
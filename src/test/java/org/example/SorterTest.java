@@ -1,5 +1,8 @@
 package org.example;
 
+import com.googlecode.lanterna.input.KeyStroke;
+import com.googlecode.lanterna.input.KeyType;
+
 import java.util.*;
 import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
@@ -293,4 +296,231 @@ public class SorterTest {
     }
 
 
+
+    @Test
+    public void testSortColumnarList() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < ColumnarList.MIN_ROWS; i++) {
+            if (i > 0) json.append(",");
+            String name = (i % 10 == 0 ? "null" : "\"n" + (i * 7919 % 1000) + "\"");
+            json.append("{\"name\":").append(name).append(",\"pos\":{\"x\":").append(i * 31 % 97).append("}}");
+        }
+        json.append("]");
+        JsonNodeList columnar = (JsonNodeList) JsonNode.parseJson(json.toString());
+        assertTrue(columnar.values instanceof ColumnarList);
+        List<Object> plain = new ArrayList<>(columnar.values);
+        for (List<String> fields : List.of(aField("name"), List.of("pos", "x"), aField("missing"))) {
+            Sorter sorter = new Sorter(false, true, true, fields, false);
+            Comparator<Integer> fast = new SorterList<>(sorter, columnar.values);
+            Comparator<Integer> slow = new SorterList<>(new Sorter(false, true, true, fields, false), plain);
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < plain.size(); i++) indexes.add(i);
+            List<Integer> expected = indexes.stream().sorted(slow).collect(Collectors.toList());
+            List<Integer> actual = indexes.stream().sorted(fast).collect(Collectors.toList());
+            assertEquals(expected, actual, "sorting by " + fields);
+        }
+    }
+
+    @Test
+    public void testSortKeys() throws Exception {
+        // A bit of everything, in random order.
+        Random random = new Random(42);
+        List<Object> values = new ArrayList<>();
+        Object[] scalars = new Object[] {null, true, false, 3, -2, 2.5, 10_000_000_000L, "", "b", "B", "a10", "a9", "A9x", "7"};
+        for (int i = 0; i < 2000; i++) {
+            Object v = scalars[random.nextInt(scalars.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    values.add(v);
+                    break;
+                case 1:
+                    Map<String, Object> m = new HashMap<>();
+                    if (random.nextBoolean()) m.put("name", v);
+                    values.add(m);
+                    break;
+                default:
+                    Map<String, Object> inner = new HashMap<>();
+                    inner.put("name", v);
+                    Map<String, Object> outer = new HashMap<>();
+                    outer.put("p", inner);
+                    values.add(outer);
+            }
+        }
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) indexes.add(i);
+        int[] order = indexes.stream().mapToInt(i -> i).toArray();
+        for (List<String> fields : List.of(NO_FIELDS, aField("name"), List.of("p", "name"))) {
+            for (int flags = 0; flags < 8; flags++) {
+                Sorter sorter = new Sorter((flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, fields, false);
+                List<Integer> expected = indexes.stream().sorted(new SorterList<>(sorter, values)).collect(Collectors.toList());
+                int[] actual = sorter.keysOf(values).sort(order);
+                assertEquals(expected, Arrays.stream(actual).boxed().collect(Collectors.toList()), sorter.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSortKeys() {
+        // Lots of ties, so we'd see if they came out in a different order.
+        Random random = new Random(7);
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < SortKeys.PARALLEL_MIN * 6 + 123; i++) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("name", random.nextInt(10) == 0 ? null : "item " + random.nextInt(500));
+            values.add(m);
+        }
+        int[] order = new int[values.size()];
+        for (int i = 0; i < order.length; i++) order[i] = order.length - 1 - i;
+        for (boolean reverse : new boolean[] {false, true}) {
+            SortKeys keys = new Sorter(reverse, true, true, aField("name"), false).keysOf(values);
+            int[] expected = keys.sort(order, false);
+            assertArrayEquals(expected, keys.sort(order, true));
+            for (int i = 1; i < expected.length; i++) {
+                assertTrue(keys.compare(expected[i - 1], expected[i]) <= 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSortKeysHead() {
+        Random random = new Random(3);
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) values.add(random.nextInt(50));
+        int[] order = new int[values.size()];
+        for (int i = 0; i < order.length; i++) order[i] = (i * 7) % order.length;
+        for (boolean reverse : new boolean[] {false, true}) {
+            SortKeys keys = new Sorter(reverse, false, false, NO_FIELDS, false).keysOf(values);
+            int[] all = keys.sort(order);
+            for (int k : new int[] {0, 1, 17, 1000, 5000, 6000}) {
+                assertArrayEquals(Arrays.copyOf(all, Math.min(k, all.length)), keys.head(order, k), "k=" + k);
+            }
+        }
+    }
+
+    @Test
+    public void testLazySort() throws Exception {
+        Random random = new Random(5);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < JsonNodeList.LAZY_SORT_MIN + 500; i++) {
+            if (i > 0) json.append(",");
+            json.append("{\"id\": ").append(i).append(", \"score\": ").append(random.nextInt(1000)).append("}");
+        }
+        json.append("]");
+        JsonNodeList list = (JsonNodeList) JsonNode.parseJson(json.toString());
+        Sorter sorter = new Sorter(true, false, false, aField("score"), false);
+        int[] expected = new Sorter(true, false, false, aField("score"), false).keysOf(list.values).sort(list.getIndexesInOrder());
+        list.sort(sorter);
+        // the first screen is right away...
+        for (int pos = 0; pos < 50; pos++) {
+            assertEquals(list.get(expected[pos]), list.childAtPosition(pos));
+        }
+        assertEquals(list.get(expected[1]), list.nextChild(list.get(expected[0]).asCursor()));
+        // ... and so is the rest, when we look.
+        assertEquals(list.get(expected[expected.length - 1]), list.lastChild());
+        assertArrayEquals(expected, list.getIndexesInOrder());
+        list.checkInvariants();
+
+        // sorting again stops the sort that's still going: the result is sorted all
+        // the same, but ties may come in another order.
+        list.sort(new Sorter(false, false, false, aField("score"), false));
+        list.sort(sorter);
+        assertSorted(sorter.keysOf(list.values), list.getIndexesInOrder(), list.size());
+        list.sort(null);
+        assertEquals(list.get(0), list.childAtPosition(0));
+        assertEquals(JsonNodeList.LAZY_SORT_MIN + 499, list.getIndexesInOrder()[JsonNodeList.LAZY_SORT_MIN + 499]);
+
+        // undoing stops the sort that's still going.
+        SortKeys keys = sorter.keysOf(list.values);
+        keys.stop();
+        assertThrows(java.util.concurrent.CancellationException.class, () -> keys.sort(list.getIndexesInOrder()));
+        list.sort(sorter);
+        list.sort(null);
+        list.sort(sorter);
+        assertArrayEquals(expected, list.getIndexesInOrder());
+    }
+
+    @Test
+    public void testAppendWhileLazySorting() throws Exception {
+        Random random = new Random(7);
+        List<Object> values = new java.util.ArrayList<>();
+        for (int i = 0; i < JsonNodeList.LAZY_SORT_MIN + 500; i++) {
+            values.add(random.nextInt(100_000));
+        }
+        JsonNodeList list = (JsonNodeList) JsonNode.fromObject(values, null, new Cursor(), null);
+        Sorter sorter = new Sorter(false, false, false, List.of(), false);
+        list.sort(sorter);
+        // values that go in the first screen, and others that don't.
+        List<Object> more = new java.util.ArrayList<>();
+        for (int i = 0; i < 300; i++) more.add(random.nextInt(100_000));
+        more.add(-1);
+        list.appendValues(more);
+        assertEquals(-1, list.childAtPosition(0).getValue());
+        list.appendValues(List.of(-2, 200_000));
+        assertEquals(-2, list.childAtPosition(0).getValue());
+        assertEquals(-1, list.childAtPosition(1).getValue());
+        assertEquals(200_000, list.lastChild().getValue());
+        assertSorted(sorter.keysOf(list.values), list.getIndexesInOrder(), list.size());
+        list.checkInvariants();
+    }
+
+    // The order has each index once, sorted by the keys.
+    private static void assertSorted(SortKeys keys, int[] order, int size) {
+        assertEquals(size, order.length);
+        assertEquals(size, Arrays.stream(order).distinct().count());
+        for (int pos = 1; pos < order.length; pos++) {
+            assertTrue(keys.compare(order[pos - 1], order[pos]) <= 0, "at " + pos);
+        }
+    }
+
+    private static Map<String, Object> request(String status, Object latency) {
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("status", status);
+        ret.put("latency", latency);
+        return ret;
+    }
+
+    @Test
+    public void testMultiKeySort() {
+        List<Object> values = List.of(
+                request("ok", 10), request("error", 5), request("ok", 30),
+                request("error", "n/a"), request("ok", 20), request("error", 50));
+        Sorter sorter = Sorter.byEach(List.of(
+                new Sorter(false, true, true, aField("status"), false),
+                new Sorter(true, true, true, aField("latency"), false)));
+        assertEquals("sort(\"status\",num) then sort(\"latency\",R,num)", sorter.toString());
+        List<Integer> indexes = List.of(0, 1, 2, 3, 4, 5);
+        List<Integer> expected = List.of(3, 5, 1, 2, 4, 0);
+        assertEquals(expected, indexes.stream().sorted(new SorterList<>(sorter, values)).collect(Collectors.toList()));
+        int[] got = sorter.keysOf(values).sort(new int[] {0, 1, 2, 3, 4, 5});
+        assertEquals(expected, Arrays.stream(got).boxed().collect(Collectors.toList()));
+
+        // through the UI: pick status, "+", then latency reversed.
+        JsonNodeList list = (JsonNodeList) JsonNode.fromObject(new ArrayList<>(values), null, new Cursor(), null);
+        org.example.ui.SortControl control = new org.example.ui.SortControl(List.of(list));
+        control.update(KeyStroke.fromString("s"));
+        control.update(new KeyStroke(KeyType.ArrowDown));
+        assertNull(control.update(KeyStroke.fromString("+")));
+        control.update(KeyStroke.fromString("l"));
+        control.update(new KeyStroke(KeyType.ArrowDown));
+        control.update(KeyStroke.fromString("r"));
+        Sorter fromUi = control.update(new KeyStroke(KeyType.Enter));
+        assertEquals(sorter.toString(), fromUi.toString());
+        list.sort(fromUi);
+        assertArrayEquals(got, list.getIndexesInOrder());
+
+        // the settings of the first key don't carry over to the next one.
+        control = new org.example.ui.SortControl(List.of(list));
+        control.update(KeyStroke.fromString("s"));
+        control.update(new KeyStroke(KeyType.ArrowDown));
+        control.update(KeyStroke.fromString("r"));
+        control.update(KeyStroke.fromString("a"));
+        control.update(KeyStroke.fromString("n"));
+        control.update(KeyStroke.fromString("+"));
+        control.update(KeyStroke.fromString("l"));
+        fromUi = control.update(new KeyStroke(KeyType.Enter));
+        Sorter expectedUi = Sorter.byEach(List.of(
+                new Sorter(true, false, false, aField("status"), false),
+                new Sorter(false, true, true, aField("latency"), false)));
+        assertEquals(expectedUi.toString(), fromUi.toString());
+    }
 }
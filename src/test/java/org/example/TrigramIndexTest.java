@@ -0,0 +1,108 @@
+package org.example;
+
+import org.example.cursor.FindCursor;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+// Tests for the TrigramIndex class, and searching with it.
+public class TrigramIndexTest {
+
+    @Test
+    public void testRequiredLiterals() {
+        assertEquals(List.of("needle"), TrigramIndex.requiredLiterals("needle"));
+        assertEquals(List.of("hello", "world"), TrigramIndex.requiredLiterals("^hello.*world$"));
+        // the letter before "?" or "*" may be missing
+        assertEquals(List.of("colo", "r ab"), TrigramIndex.requiredLiterals("colou?r abc*"));
+        assertEquals(List.of("error ", " disk"), TrigramIndex.requiredLiterals("error \\d+ disk"));
+        assertEquals(List.of("a.b"), TrigramIndex.requiredLiterals("a\\.b"));
+        // groups and classes may be optional or match anything
+        assertEquals(List.of("foo", "bar"), TrigramIndex.requiredLiterals("foo(xyz)?[a-z[def]]bar"));
+        // too short to look up
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("ab.cd"));
+        // can't tell
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("cat|dog"));
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("(?x) n e e d l e"));
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("\\Qhello\\E"));
+    }
+
+    @Test
+    public void testCandidates() {
+        List<Object> values = new ArrayList<>();
+        values.add(Map.of("name", "needle"));
+        values.add(Map.of("name", "haystack"));
+        values.add(List.of("more", "Needles"));
+        values.add("straße");
+        TrigramIndex index = TrigramIndex.build(values);
+        assertTrue(index.isReady());
+        assertEquals(4, index.recordCount());
+        assertEquals(Set.of(0, 2), bits(index.candidates(List.of("NEEDLE"))));
+        assertEquals(Set.of(0, 1), bits(index.candidates(List.of("name"))));
+        assertEquals(Set.of(), bits(index.candidates(List.of("needle", "hay"))));
+        // upper case can change the letters
+        assertEquals(Set.of(3), bits(index.candidates(List.of("STRASSE"))));
+        assertEquals(Set.of(3), bits(index.candidates(List.of("straße"))));
+        // too short to say
+        assertNull(index.candidates(List.of("ne")));
+        // changed records might match anything
+        index.recordChanged(1);
+        assertEquals(Set.of(0, 1, 2), bits(index.candidates(List.of("needle"))));
+    }
+
+    @Test
+    public void testFindWithIndex() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 300; i++) {
+            if (i > 0) json.append(",");
+            json.append("{\"name\": \"item ").append(i).append("\", \"wait_sec\": ").append(i * 60)
+                    .append(", \"tags\": [\"t").append(i % 7).append("\", null], \"city\": \"Straße ").append(i % 3).append("\"}");
+        }
+        json.append("]");
+        String[][] searches = new String[][] {
+                // pattern, substring, ignoreCase, regexp
+                {"item 1", "true", "true", "false"},
+                {"ITEM 2", "true", "false", "false"},
+                {"item 42", "false", "false", "false"},
+                {"minutes", "true", "false", "false"},
+                {"strasse", "true", "true", "false"},
+                {"null", "true", "false", "false"},
+                {"name", "false", "false", "false"},
+                {"item 1[0-9]5", "true", "false", "true"},
+                {"^ITEM \\d+2$", "false", "true", "true"},
+                {"x?.*minutes", "true", "false", "true"},
+        };
+        JsonNode plain = JsonNode.parseJson(json.toString());
+        JsonNode indexed = JsonNode.parseJson(json.toString());
+        ((JsonNodeList) indexed).startIndexing();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!((JsonNodeList) indexed).getTextIndex().isReady()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        // things that changed since indexing are still found.
+        for (JsonNode root : new JsonNode[] {plain, indexed}) {
+            ((JsonNodeMap) ((JsonNodeList) root).get(5)).getChild("name").setAnnotation("needle in haystack");
+            ((JsonNodeList) root).appendValues(List.of("item 1 again", "a needle"));
+        }
+        // the index only has the one element, and the one that changed.
+        assertEquals(Set.of(5, 42), bits(((JsonNodeList) indexed).getTextIndex().candidates(List.of("ITEM 42"))));
+        for (String[] s : searches) {
+            for (boolean ignoreComments : new boolean[] {false, true}) {
+                FindCursor expected = new FindCursor(s[0], Boolean.parseBoolean(s[1]), Boolean.parseBoolean(s[2]), true, true, ignoreComments, Boolean.parseBoolean(s[3]));
+                FindCursor actual = new FindCursor(s[0], Boolean.parseBoolean(s[1]), Boolean.parseBoolean(s[2]), true, true, ignoreComments, Boolean.parseBoolean(s[3]));
+                assertEquals(expected.countMatches(plain), actual.countMatches(indexed), s[0]);
+            }
+        }
+        FindCursor needle = new FindCursor("needle", true, false, true, true, false, false);
+        assertEquals(2, needle.countMatches(indexed));
+        assertEquals(1, new FindCursor("needle", true, false, true, true, true, false).countMatches(indexed));
+    }
+
+    private static Set<Integer> bits(BitSet set) {
+        Set<Integer> ret = new HashSet<>();
+        set.stream().forEach(ret::add);
+        return ret;
+    }
+}
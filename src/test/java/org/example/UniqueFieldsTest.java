@@ -90,4 +90,51 @@ public class UniqueFieldsTest {
     }
 
 
+    
+    @Test
+    public void testAggColumnar() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < ColumnarList.MIN_ROWS; i++) {
+            if (i > 0) json.append(",");
+            String inner = (i % 2 == 0 ? "[{\"a\":1}]" : "[{\"a\":1, \"b\":2}]");
+            json.append("{\"id\":").append(i).append(",\"x\":").append(inner).append("}");
+        }
+        json.append("]");
+        JsonNodeList jsonList = (JsonNodeList) JsonNode.parseJson(json.toString());
+        assertTrue(jsonList.values instanceof ColumnarList);
+
+        AggUniqueFields aggregator = new AggUniqueFields(jsonList);
+        aggregator.write(jsonList);
+
+        JsonNodeMap agMap = (JsonNodeMap) jsonList.aggregate;
+        assertEquals("=100%", agMap.getChild("id").aggregateComment);
+        assertEquals("=100%", agMap.getChild("x").aggregateComment);
+        JsonNodeMap inner = (JsonNodeMap) agMap.getChild("x");
+        assertEquals("=100%", inner.getChild("a").aggregateComment);
+        assertEquals("  50%", inner.getChild("b").aggregateComment);
+    }
+    @Test
+    public void testAggColumnarAfterChange() throws Exception {
+        String[] lines = new String[ColumnarList.MIN_ROWS];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "{\"a\": " + i + ", \"s\": \"text\"}";
+        }
+        JsonNodeList jsonList = (JsonNodeList) JsonNode.parseLines(lines);
+        assertTrue(jsonList.values instanceof ColumnarList);
+        // the column still holds a string for this one, but the node has a list of maps.
+        JsonNodeMap second = (JsonNodeMap) jsonList.get(1);
+        second.replaceChild(second.getChild("s").asCursor(),
+                JsonNode.Builder.fromObject(java.util.List.of(java.util.Map.of("x", 1))));
+
+        AggUniqueFields aggregator = new AggUniqueFields(jsonList);
+        aggregator.write(jsonList);
+
+        JsonNodeMap agMap = (JsonNodeMap) jsonList.aggregate;
+        assertEquals("=100%", agMap.getChild("a").aggregateComment);
+        assertEquals("=100%", agMap.getChild("s").aggregateComment);
+        JsonNodeMap s = (JsonNodeMap) agMap.getChild("s");
+        assertEquals(java.util.List.of("x"), s.getKeysInOrder());
+        assertEquals("=100%", s.getChild("x").aggregateComment);
     }
+
+}
@@ -189,4 +189,78 @@ public class PathCursorTest {
         assertEquals(".players.Bob", got.toString());
     }
 
+
+    static String GAME="{\n"+
+            "  \"players\": [\n"+
+            "    {\"name\": \"Alex\", \"score\": 10, \"team\": {\"name\": \"red\"}},\n"+
+            "    {\"name\": \"Bob\", \"score\": 35},\n"+
+            "    {\"name\": \"Cid\", \"score\": 20, \"team\": {\"name\": \"blue\"}},\n"+
+            "    {\"name\": \"Dee\", \"score\": null}\n"+
+            "  ],\n"+
+            "  \"name\": \"game\"\n"+
+            "}\n";
+
+    static List<String> selected(JsonNode root, String path) {
+        List<JsonNode> selected = new ArrayList<>();
+        new PathCursor(path).addAllNodes(root.asCursor(), selected);
+        return selected.stream().map(n -> n.asCursor().toString()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRecursiveDescent() throws JsonProcessingException {
+        JsonNode state = JsonNode.parseJson(GAME);
+        assertEquals(List.of(".players[0].name", ".players[0].team.name", ".players[1].name",
+                ".players[2].name", ".players[2].team.name", ".players[3].name", ".name"),
+                selected(state, "..name"));
+        assertEquals(List.of(".players[0].team.name", ".players[2].team.name"), selected(state, "..team.name"));
+        assertEquals(List.of(".players[1]"), selected(state, "..[1]"));
+        // records without the key are skipped
+        assertEquals(List.of(".players[0].team", ".players[2].team"), selected(state, ".players[*].team"));
+
+        PathCursor names = new PathCursor("..team.name");
+        assertTrue(names.selects(null, new Cursor().enterKey("players").enterIndex(7).enterKey("team").enterKey("name")));
+        assertTrue(names.selects(null, new Cursor().enterKey("team").enterKey("name")));
+        assertFalse(names.selects(null, new Cursor().enterKey("team").enterKey("name").enterKey("x")));
+        assertFalse(names.selects(null, new Cursor().enterKey("players").enterIndex(7).enterKey("name")));
+    }
+
+    @Test
+    public void testFilters() throws JsonProcessingException {
+        JsonNode state = JsonNode.parseJson(GAME);
+        assertEquals(List.of(".players[1].name", ".players[2].name"), selected(state, ".players[?(@.score >= 20)].name"));
+        assertEquals(List.of(".players[1]"), selected(state, ".players[?(@.name == 'Bob')]"));
+        assertEquals(List.of(".players[3]"), selected(state, ".players[?(@.score==null)]"));
+        assertEquals(List.of(".players[0]", ".players[2]"), selected(state, ".players[?(@.team)]"));
+        assertEquals(List.of(".players[2].score"), selected(state, ".players[?(@.team.name==\"blue\")].score"));
+        assertEquals(List.of(".players[0]", ".players[2]", ".players[3]"), selected(state, ".players[?(@.name != 'Bob')]"));
+        assertEquals(List.of(), selected(state, ".players[?(@.score > 'a')]"));
+        assertEquals(List.of(".players[1].score"), selected(state, "..[?(@ > 30)]"));
+
+        // once there are nodes, the filter looks at them.
+        ((JsonNodeMap) ((org.example.JsonNodeList) ((JsonNodeMap) state).getChild("players")).get(1)).getChild("score");
+        assertEquals(List.of(".players[1].name", ".players[2].name"), selected(state, ".players[?(@.score >= 20)].name"));
+
+        PathCursor high = new PathCursor(".players[?(@.score > 15)]");
+        JsonNode players = ((JsonNodeMap) state).getChild("players");
+        assertTrue(high.selects(null, ((org.example.JsonNodeList) players).get(2).asCursor()));
+        assertFalse(high.selects(null, ((org.example.JsonNodeList) players).get(0).asCursor()));
+        // no node to look at
+        assertFalse(high.selects(null, new Cursor().enterKey("players").enterIndex(2)));
+    }
+
+    @Test
+    public void testNextAndPrevInList() throws JsonProcessingException {
+        JsonNode state = JsonNode.parseJson(GAME);
+        PathCursor cur = new PathCursor(".players[*].score");
+        org.example.JsonNodeList players = (org.example.JsonNodeList) ((JsonNodeMap) state).getChild("players");
+        Cursor alex = players.get(0).asCursor();
+        Cursor first = cur.nextCursor(alex);
+        assertEquals(".players[0].score", first.toString());
+        Cursor third = cur.nextCursor(cur.nextCursor(first));
+        assertEquals(".players[2].score", third.toString());
+        assertEquals(".players[1].score", cur.prevCursor(third).toString());
+        assertNull(cur.prevCursor(alex));
+        assertNull(cur.nextCursor(((JsonNodeMap) players.get(3)).getChild("score").asCursor()));
+    }
+
 }
\ No newline at end of file